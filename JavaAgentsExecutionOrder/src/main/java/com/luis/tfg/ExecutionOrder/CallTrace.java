@@ -0,0 +1,98 @@
+package com.luis.tfg.ExecutionOrder;
+
+/**
+ * Últimas llamadas validadas por una StateMachine, guardadas como símbolos en un anillo de enteros.
+ *
+ * <p>Se activa con {@code -Dexecutionorder.trace=N}: cada StateMachine reserva al crearse un
+ * {@code int[]} con N posiciones (redondeado a potencia de dos) y cada llamada sólo escribe un
+ * entero, sin reservar memoria. El contenido se añade al mensaje de la violación. Con el motor
+ * {@link StateMachine.Engine#CONCURRENT} las escrituras de varios hilos no se sincronizan, así que
+ * el orden de las últimas posiciones es aproximado. Los métodos que no aparecen en el patrón se
+ * muestran como {@code ?}.</p>
+ */
+final class CallTrace {
+
+    /**
+     * Posiciones que puede tener como mucho un anillo. Cada StateMachine reserva el suyo, así que
+     * tamaños mayores no sirven para depurar y con más de 2^30 el redondeo desbordaría.
+     */
+    static final int MAX_SIZE = 1 << 16;
+
+    /**
+     * Posiciones del anillo de cada StateMachine nueva; 0 si no se guardan llamadas.
+     */
+    static final int DEFAULT_SIZE = checkedSize(Integer.getInteger("executionorder.trace", 0));
+
+    private final int[] symbols;
+    private final int mask;
+    // Número de llamadas guardadas; el anillo se indexa con sus bits bajos
+    private int count;
+
+    CallTrace(int size) {
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid call trace size: " + size);
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.symbols = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Tamaño leído de {@code -Dexecutionorder.trace}: si es negativo no se guardan llamadas y si pasa
+     * de {@link #MAX_SIZE} se queda en ese máximo, avisando una sola vez en lugar de fallar al crear
+     * cada StateMachine.
+     */
+    static int checkedSize(int size) {
+        if (size < 0) {
+            System.out.println("[WARNING] Invalid executionorder.trace " + size + ", recent calls are not recorded");
+            return 0;
+        }
+        if (size > MAX_SIZE) {
+            System.out.println("[WARNING] executionorder.trace " + size + " is too large, using " + MAX_SIZE);
+            return MAX_SIZE;
+        }
+        return size;
+    }
+
+    /**
+     * Anillo de {@code size} posiciones, o null si {@code size} es 0.
+     */
+    static CallTrace ofSize(int size) {
+        return size == 0 ? null : new CallTrace(size);
+    }
+
+    void record(int symbol) {
+        int position = count;
+        symbols[position & mask] = symbol;
+        count = position + 1;
+    }
+
+    /**
+     * Llamadas guardadas, de la más antigua a la más reciente.
+     */
+    int[] recent() {
+        int total = count;
+        // count puede desbordar; como número sin signo sigue siendo válido para la máscara
+        int length = (int) Math.min(Integer.toUnsignedLong(total), symbols.length);
+        int[] recent = new int[length];
+        for (int i = 0; i < length; i++) {
+            recent[i] = symbols[(total - length + i) & mask];
+        }
+        return recent;
+    }
+
+    String describe(SymbolTable symbolTable) {
+        StringBuilder description = new StringBuilder("[");
+        int[] recent = recent();
+        for (int i = 0; i < recent.length; i++) {
+            if (i > 0) {
+                description.append(", ");
+            }
+            description.append(symbolTable.name(recent[i]));
+        }
+        return description.append(']').toString();
+    }
+}
@@ -0,0 +1,155 @@
+package com.luis.tfg.ExecutionOrder;
+
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+
+import java.lang.instrument.IllegalClassFormatException;
+import java.nio.charset.StandardCharsets;
+import java.security.ProtectionDomain;
+import java.util.List;
+
+/**
+ * Filtro delante del transformador de ByteBuddy: sólo le pasa las clases cuyo pool de constantes
+ * contiene el descriptor de {@link ExecutionOrder}.
+ *
+ * <p>Una clase anotada guarda el tipo de la anotación como una entrada {@code Utf8} del pool de
+ * constantes, así que si no está la clase no puede estar anotada. Recorrer el pool es mucho más barato
+ * que la descripción que construye ByteBuddy para aplicar los matchers, y la inmensa mayoría de las
+ * clases que carga la JVM (las del JDK y de las librerías) se descartan aquí. Las clases cuyo nombre
+ * empieza por un prefijo ignorado se descartan sin mirar el pool.</p>
+ */
+final class ConstantPoolFilter extends ResettableClassFileTransformer.WithDelegation {
+
+    private static final byte[] DESCRIPTOR =
+            ("L" + ExecutionOrder.class.getName().replace('.', '/') + ";").getBytes(StandardCharsets.UTF_8);
+
+    // Etiquetas de las entradas del pool de constantes (JVMS §4.4)
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    // Prefijos ignorados en formato interno (com/ejemplo/)
+    private final String[] ignoredPrefixes;
+
+    ConstantPoolFilter(ResettableClassFileTransformer classFileTransformer, List<String> ignoredPrefixes) {
+        super(classFileTransformer);
+        this.ignoredPrefixes = new String[ignoredPrefixes.size()];
+        for (int i = 0; i < this.ignoredPrefixes.length; i++) {
+            this.ignoredPrefixes[i] = ignoredPrefixes.get(i).replace('.', '/');
+        }
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+        if (!isCandidate(className, classfileBuffer)) {
+            return null;
+        }
+        return classFileTransformer.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    }
+
+    @Override
+    public byte[] transform(Module module, ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+        if (!isCandidate(className, classfileBuffer)) {
+            return null;
+        }
+        return classFileTransformer.transform(module, loader, className, classBeingRedefined, protectionDomain,
+                classfileBuffer);
+    }
+
+    boolean isCandidate(String className, byte[] classFile) {
+        if (className != null) {
+            for (String prefix : ignoredPrefixes) {
+                if (className.startsWith(prefix)) {
+                    return false;
+                }
+            }
+        }
+        return mentions(classFile, DESCRIPTOR);
+    }
+
+    /**
+     * Si el pool de constantes de la clase tiene una entrada {@code Utf8} igual a {@code utf8}. Ante
+     * un fichero que no se entiende (truncado o con etiquetas nuevas) devuelve true y deja que decida
+     * ByteBuddy.
+     */
+    static boolean mentions(byte[] classFile, byte[] utf8) {
+        if (classFile == null || classFile.length < 10) {
+            return true;
+        }
+        try {
+            int count = readUnsignedShort(classFile, 8);
+            int offset = 10;
+            for (int entry = 1; entry < count; entry++) {
+                int tag = classFile[offset] & 0xff;
+                switch (tag) {
+                    case UTF8:
+                        int length = readUnsignedShort(classFile, offset + 1);
+                        if (length == utf8.length && equalsAt(classFile, offset + 3, utf8)) {
+                            return true;
+                        }
+                        offset += 3 + length;
+                        break;
+                    case CLASS:
+                    case STRING:
+                    case METHOD_TYPE:
+                    case MODULE:
+                    case PACKAGE:
+                        offset += 3;
+                        break;
+                    case METHOD_HANDLE:
+                        offset += 4;
+                        break;
+                    case INTEGER:
+                    case FLOAT:
+                    case FIELD_REF:
+                    case METHOD_REF:
+                    case INTERFACE_METHOD_REF:
+                    case NAME_AND_TYPE:
+                    case DYNAMIC:
+                    case INVOKE_DYNAMIC:
+                        offset += 5;
+                        break;
+                    case LONG:
+                    case DOUBLE:
+                        // Ocupan dos entradas
+                        offset += 9;
+                        entry++;
+                        break;
+                    default:
+                        return true;
+                }
+            }
+            return false;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+    }
+
+    private static boolean equalsAt(byte[] bytes, int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
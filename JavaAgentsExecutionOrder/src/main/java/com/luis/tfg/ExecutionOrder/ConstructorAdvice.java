@@ -2,33 +2,16 @@ package com.luis.tfg.ExecutionOrder;
 
 import net.bytebuddy.asm.Advice;
 
+/**
+ * Advice que se copia al final de cada constructor de una clase anotada: registra la StateMachine
+ * de la nueva instancia con el patrón de la clase, escrito como constante al tejer
+ * ({@link ProtocolPattern}), sin consultar la anotación ni escribir nada por instancia.
+ */
 public class ConstructorAdvice {
 
     @Advice.OnMethodExit
     public static void onConstructorExit(@Advice.This Object instance,
-                                         @Advice.Origin("#t") String className) {
-        System.out.println("[INFO] Constructor intercepted for instance: " + instance + " of class: " + className);
-
-        // Obtener la anotación ExecutionOrder
-        ExecutionOrder executionOrder = instance.getClass().getAnnotation(ExecutionOrder.class);
-        if (executionOrder == null) {
-            System.out.println("[WARNING] No @ExecutionOrder annotation found for class: " + className);
-            return;
-        }
-
-        // Registrar en el ExecutionOrderRegistry
-        String executionOrderValue = executionOrder.value();
-        System.out.println("[INFO] @ExecutionOrder value: " + executionOrderValue);
-
+                                         @ProtocolPattern String executionOrderValue) {
         ExecutionOrderRegistry.register(instance, executionOrderValue);
-
-        // Verificar el registro
-        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
-        if (stateMachine == null) {
-            System.out.println("[ERROR] StateMachine registration failed for instance: " + instance);
-            throw new IllegalStateException("Failed to register StateMachine for instance: " + instance);
-        } else {
-            System.out.println("[SUCCESS] StateMachine registered successfully for instance: " + instance);
-        }
     }
-}
\ No newline at end of file
+}
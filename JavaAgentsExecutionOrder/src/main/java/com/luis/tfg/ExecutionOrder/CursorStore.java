@@ -0,0 +1,30 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Almacén externo de las instantáneas de {@link ExecutionOrderSnapshot}, para entidades que
+ * pasan de una JVM a otra y cuyo protocolo tiene que continuar donde lo dejó la anterior.
+ *
+ * <p>El código tejido nunca accede al almacén: las instancias se restauran y se guardan a través
+ * de {@link ExecutionOrderCursors}, que agrupa las escrituras y guarda en caché las lecturas. Las
+ * implementaciones son {@link InMemoryCursorStore} y {@link FileCursorStore}.</p>
+ */
+public interface CursorStore extends Closeable {
+
+    /**
+     * Instantánea guardada con la clave, o null si no hay ninguna.
+     */
+    byte[] load(String key) throws IOException;
+
+    /**
+     * Guarda un lote de instantáneas. Una clave con valor null borra la instantánea guardada.
+     */
+    void storeAll(Map<String, byte[]> snapshots) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -8,5 +8,45 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
 public @interface ExecutionOrder {
+    /**
+     * Patrón de llamadas. Si una superclase también está anotada, rige el de la superclase anotada
+     * más alta (ver {@link MethodOrderAgent#instrument}).
+     */
     String value();
-}
\ No newline at end of file
+
+    /**
+     * Métodos de la clase en los que el agente comprueba el orden.
+     */
+    Weave weave() default Weave.ALL;
+
+    /**
+     * Qué llamadas avanzan el protocolo cuando un método tejido llama a otro de la misma instancia.
+     */
+    Reentrancy reentrancy() default Reentrancy.ALL_CALLS;
+
+    enum Weave {
+        /** Todos los métodos: llamar a uno que el patrón no nombra es un error, salvo dentro de un comodín. */
+        ALL,
+        /**
+         * Sólo los métodos que nombra el patrón; el resto no tiene ningún coste y se puede llamar en
+         * cualquier momento. Si el patrón tiene un comodín ({@code .*} o {@code [end:+]}) se tejen todos,
+         * porque el comodín necesita ver las demás llamadas para saber dónde están permitidas.
+         */
+        PROTOCOL,
+        /**
+         * Sólo los métodos que nombra el patrón, también con comodines: las llamadas a otros métodos no
+         * se comprueban nunca, tampoco fuera del comodín.
+         */
+        PROTOCOL_WITH_WILDCARDS
+    }
+
+    enum Reentrancy {
+        /** Todas, también las que un método de la instancia hace a otro. */
+        ALL_CALLS,
+        /**
+         * Sólo la más externa de cada instancia en cada hilo: las llamadas internas no se comprueban y
+         * sólo cuestan subir y bajar un contador de profundidad.
+         */
+        OUTERMOST
+    }
+}
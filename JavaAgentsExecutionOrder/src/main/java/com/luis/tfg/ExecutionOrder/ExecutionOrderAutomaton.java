@@ -0,0 +1,199 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Autómata compilado a partir de un patrón de {@link ExecutionOrder}.
+ *
+ * <p>El patrón se analiza con {@link PatternParser} y se compila con {@link PatternCompiler} a un
+ * autómata determinista y mínimo, una única vez por patrón, que se comparte entre todas las
+ * instancias anotadas con él. Tras la compilación no se vuelve a modificar: cada
+ * {@link StateMachine} guarda únicamente su posición (cursor) dentro de este autómata.</p>
+ *
+ * <p>Con una tabla perezosa (ver {@link Compilation}) los estados se calculan según los cursores
+ * llegan a ellos, así que {@link #getStateCount()}, {@link #getState(String)} y
+ * {@link #getTransitions()} describen sólo la parte del autómata recorrida hasta el momento.</p>
+ */
+public final class ExecutionOrderAutomaton {
+
+    /**
+     * Cuándo se calculan los estados del autómata.
+     */
+    public enum Compilation {
+        /** Perezosa para patrones grandes (más de {@link PatternCompiler#LAZY_NFA_STATES} estados del AFN), completa para el resto. */
+        AUTO,
+        /** Tabla completa y mínima al compilar. */
+        EAGER,
+        /** Estados calculados a medida que los cursores llegan a ellos, salvo en patrones con contadores o máscaras. */
+        LAZY
+    }
+
+    // Autómatas ya compilados, indexados por el texto del patrón
+    private static final ConcurrentHashMap<String, ExecutionOrderAutomaton> compiledPatterns = new ConcurrentHashMap<>();
+    // -Dexecutionorder.compilation=auto|eager|lazy y filas que guarda como mucho cada tabla perezosa
+    // (los estados descubiertos se conservan todos, ver LazyTransitionTable)
+    private static final Compilation compilation = Compilation.valueOf(
+            System.getProperty("executionorder.compilation", "auto").toUpperCase());
+    private static final int lazyCacheSize = Integer.getInteger("executionorder.lazy.cache", 1024);
+
+    private final String regex;
+    private final TransitionTable transitionTable;
+    // null con una tabla perezosa: se calculan en cada consulta
+    private final Map<String, State> states;
+    private final Map<String, List<String>> transitions;
+
+    private ExecutionOrderAutomaton(String regex, TransitionTable transitionTable) {
+        this.regex = regex;
+        this.transitionTable = transitionTable;
+        if (transitionTable.isLazy()) {
+            this.states = null;
+            this.transitions = null;
+        } else {
+            Map<String, State> statesById = statesById();
+            this.states = Collections.unmodifiableMap(statesById);
+            this.transitions = Collections.unmodifiableMap(collectTransitions(statesById));
+        }
+    }
+
+    private Map<String, State> statesById() {
+        Map<String, State> statesById = new LinkedHashMap<>();
+        for (int state = 0; state < transitionTable.getStateCount(); state++) {
+            State graphState = transitionTable.getGraphState(state);
+            statesById.put(graphState.getId(), graphState);
+        }
+        return statesById;
+    }
+
+    /**
+     * Devuelve el autómata asociado al patrón, compilándolo sólo la primera vez que se solicita.
+     *
+     * @param regex patrón declarado en {@link ExecutionOrder}.
+     * @return autómata compartido e inmutable.
+     * @throws IllegalArgumentException si el patrón no es válido.
+     */
+    public static ExecutionOrderAutomaton forPattern(String regex) {
+        return compiledPatterns.computeIfAbsent(regex, ExecutionOrderAutomaton::compile);
+    }
+
+    /**
+     * Como {@link #forPattern(String)}, pero la primera vez carga la tabla que
+     * {@link ExecutionOrderProcessor} generó para la clase anotada, si existe y es del mismo patrón,
+     * en lugar de compilarlo. Con {@code -Dexecutionorder.compilation=lazy} se compila siempre.
+     *
+     * @param regex patrón declarado en {@link ExecutionOrder}.
+     * @param binaryName nombre binario de la clase anotada.
+     * @param loader cargador de la clase anotada.
+     * @return autómata compartido e inmutable.
+     * @throws IllegalArgumentException si el patrón no es válido.
+     */
+    public static ExecutionOrderAutomaton forPattern(String regex, String binaryName, ClassLoader loader) {
+        ExecutionOrderAutomaton automaton = compiledPatterns.get(regex);
+        if (automaton != null) {
+            return automaton;
+        }
+        return compiledPatterns.computeIfAbsent(regex, pattern -> {
+            TransitionTable table = compilation == Compilation.LAZY ? null
+                    : PrecompiledTable.load(binaryName, loader, pattern);
+            if (table == null) {
+                return compile(pattern);
+            }
+            System.out.println("[INFO] Loaded precompiled ExecutionOrder pattern: " + pattern);
+            ExecutionOrderAutomaton precompiled = new ExecutionOrderAutomaton(pattern, table);
+            precompiled.debugTransitions();
+            return precompiled;
+        });
+    }
+
+    /**
+     * Compila el patrón sin pasar por la caché.
+     */
+    static ExecutionOrderAutomaton compile(String regex) {
+        return compile(regex, compilation);
+    }
+
+    static ExecutionOrderAutomaton compile(String regex, Compilation compilation) {
+        System.out.println("[INFO] Compiling ExecutionOrder pattern: " + regex);
+        TransitionTable table = PatternCompiler.compile(PatternParser.parse(regex), compilation, lazyCacheSize);
+        ExecutionOrderAutomaton automaton = new ExecutionOrderAutomaton(regex, table);
+        automaton.debugTransitions();
+        return automaton;
+    }
+
+    /**
+     * Número de patrones distintos compilados hasta el momento.
+     */
+    public static int compiledPatternCount() {
+        return compiledPatterns.size();
+    }
+
+    /**
+     * Número de estados de cada patrón compilado, ordenados por patrón.
+     */
+    static Map<String, Integer> patternStateCounts() {
+        Map<String, Integer> stateCounts = new TreeMap<>();
+        compiledPatterns.forEach((regex, automaton) -> stateCounts.put(regex, automaton.getStateCount()));
+        return stateCounts;
+    }
+
+    private void debugTransitions() {
+        if (transitionTable.isLazy()) {
+            System.out.println("[DEBUG] Lazy StateMachine, states are built on first use: " + regex);
+            return;
+        }
+        System.out.println("[DEBUG] Complete StateMachine transitions:");
+        for (Map.Entry<String, State> entry : states.entrySet()) {
+            System.out.println("State " + entry.getKey() + " transitions to: "
+                    + transitions.getOrDefault(entry.getKey(), Collections.emptyList()));
+        }
+    }
+
+    private static Map<String, List<String>> collectTransitions(Map<String, State> states) {
+        Map<String, List<String>> transitionsMap = new HashMap<>();
+        for (State state : states.values()) {
+            List<State> outgoingTransitions = state.getTransitions();
+
+            // Incluir estados con transiciones salientes
+            if (!outgoingTransitions.isEmpty()) {
+                List<String> targetStates = new ArrayList<>();
+                for (State target : outgoingTransitions) {
+                    // Incluir todas las transiciones, incluyendo las que apuntan a FINAL
+                    targetStates.add(target.getId());
+                }
+                transitionsMap.put(state.getId(), Collections.unmodifiableList(targetStates));
+            }
+        }
+        return transitionsMap;
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    public State getInitialState() {
+        return transitionTable.getGraphState(TransitionTable.INITIAL_STATE);
+    }
+
+    public State getState(String stateId) {
+        return states != null ? states.get(stateId) : statesById().get(stateId);
+    }
+
+    public int getStateCount() {
+        return transitionTable.getStateCount();
+    }
+
+    /**
+     * Transiciones de cada estado, calculadas una sola vez al compilar (con una tabla perezosa, las
+     * de los estados ya calculados).
+     */
+    public Map<String, List<String>> getTransitions() {
+        return transitions != null ? transitions : Collections.unmodifiableMap(collectTransitions(statesById()));
+    }
+
+    /**
+     * Tabla de transiciones indexada por enteros que usan los cursores.
+     */
+    public TransitionTable getTransitionTable() {
+        return transitionTable;
+    }
+}
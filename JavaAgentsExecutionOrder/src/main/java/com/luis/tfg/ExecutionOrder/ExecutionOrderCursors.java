@@ -0,0 +1,136 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Guarda y restaura el progreso de las instancias en un {@link CursorStore}, fuera de las llamadas
+ * validadas.
+ *
+ * <p>La aplicación restaura una entidad al cargarla ({@link #restore(String, Object)}) y la guarda
+ * cuando termina su turno ({@link #save(String, Object)}). Las escrituras se acumulan y se envían
+ * al almacén en lotes de {@code batchSize}, o con {@link #flush()}. Las lecturas pasan por una caché
+ * LRU de {@code cacheSize} claves que también recoge lo que se escribe; antes de ceder las entidades
+ * a otra JVM hay que llamar a {@link #flush()} y, al recibirlas de vuelta, a
+ * {@link #invalidate()}.</p>
+ */
+public final class ExecutionOrderCursors implements Closeable {
+
+    private final CursorStore store;
+    private final int batchSize;
+    // Protegidos por this
+    private final Map<String, byte[]> pending = new LinkedHashMap<>();
+    private final LinkedHashMap<String, byte[]> cache;
+
+    public ExecutionOrderCursors(CursorStore store, int batchSize, int cacheSize) {
+        if (batchSize <= 0 || cacheSize < 0) {
+            throw new IllegalArgumentException("Invalid batch size " + batchSize + " or cache size " + cacheSize);
+        }
+        this.store = store;
+        this.batchSize = batchSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Lleva la instancia al punto del protocolo guardado con la clave.
+     *
+     * @return false si no hay nada guardado; la instancia se queda como estaba.
+     * @throws IllegalArgumentException si lo guardado no es del patrón de la instancia.
+     */
+    public boolean restore(String key, Object instance) throws IOException {
+        return restore(key, ExecutionOrderSnapshot.stateMachineOf(instance));
+    }
+
+    public boolean restore(String key, StateMachine stateMachine) throws IOException {
+        byte[] snapshot = lookup(key);
+        if (snapshot == null) {
+            return false;
+        }
+        if (snapshot.length != ExecutionOrderSnapshot.SIZE) {
+            throw new IllegalArgumentException("Invalid execution order snapshot length: " + snapshot.length);
+        }
+        ExecutionOrderSnapshot.read(stateMachine, ByteBuffer.wrap(snapshot), 0);
+        return true;
+    }
+
+    /**
+     * Guarda el progreso de la instancia con la clave. Una instancia que el registro ya ha liberado
+     * por llegar a un estado terminal se guarda como protocolo terminado (ver
+     * {@link ExecutionOrderSnapshot}).
+     *
+     * @throws IllegalStateException si la instancia no está registrada.
+     */
+    public void save(String key, Object instance) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.allocate(ExecutionOrderSnapshot.SIZE);
+        ExecutionOrderSnapshot.writeInstance(instance, snapshot, 0);
+        enqueue(key, snapshot.array());
+    }
+
+    public void save(String key, StateMachine stateMachine) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.allocate(ExecutionOrderSnapshot.SIZE);
+        ExecutionOrderSnapshot.write(stateMachine, snapshot, 0);
+        enqueue(key, snapshot.array());
+    }
+
+    /**
+     * Borra lo guardado con la clave, por ejemplo cuando la entidad ha terminado su protocolo.
+     */
+    public void remove(String key) throws IOException {
+        enqueue(key, null);
+    }
+
+    /**
+     * Envía al almacén las escrituras pendientes.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        store.storeAll(new LinkedHashMap<>(pending));
+        pending.clear();
+    }
+
+    /**
+     * Vacía la caché de lecturas, para ver lo que otras JVM hayan guardado desde entonces.
+     */
+    public synchronized void invalidate() {
+        cache.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            store.close();
+        }
+    }
+
+    private synchronized byte[] lookup(String key) throws IOException {
+        if (pending.containsKey(key)) {
+            return pending.get(key);
+        }
+        if (cache.containsKey(key)) {
+            return cache.get(key);
+        }
+        byte[] snapshot = store.load(key);
+        cache.put(key, snapshot);
+        return snapshot;
+    }
+
+    private synchronized void enqueue(String key, byte[] snapshot) throws IOException {
+        pending.put(key, snapshot);
+        cache.put(key, snapshot);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.luis.tfg.ExecutionOrder;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * Procesador de anotaciones que compila los patrones de {@link ExecutionOrder} al compilar el código.
+ *
+ * <p>Un patrón que no es válido es un error de compilación de la clase anotada, en lugar de una
+ * excepción al construir la primera instancia. Para cada patrón válido se genera la clase descrita en
+ * {@link PrecompiledTable}, que el agente carga al tejer la clase en vez de compilar el patrón. Los
+ * patrones que se compilarían de forma perezosa (ver {@link ExecutionOrderAutomaton.Compilation#AUTO})
+ * sólo se validan: su tabla completa sería demasiado grande para guardarla en una clase.</p>
+ *
+ * <p>Se registra en {@code META-INF/services}, así que basta con tener el agente en el classpath de
+ * {@code javac}.</p>
+ */
+@SupportedAnnotationTypes("com.luis.tfg.ExecutionOrder.ExecutionOrder")
+public class ExecutionOrderProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(ExecutionOrder.class)) {
+            if (element instanceof TypeElement) {
+                process((TypeElement) element);
+            }
+        }
+        return false;
+    }
+
+    private void process(TypeElement type) {
+        String regex = type.getAnnotation(ExecutionOrder.class).value();
+        TransitionTable table;
+        try {
+            table = PatternCompiler.compile(PatternParser.parse(regex), ExecutionOrderAutomaton.Compilation.AUTO, 1);
+        } catch (IllegalArgumentException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Invalid @ExecutionOrder pattern: " + e.getMessage(), type, annotationOf(type));
+            return;
+        }
+        if (table.isLazy()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "@ExecutionOrder pattern is too large to precompile, it will be compiled lazily at runtime", type);
+            return;
+        }
+
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String className = PrecompiledTable.className(binaryName);
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(className, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source(className, regex, PrecompiledTable.encode(table)));
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write precompiled @ExecutionOrder table " + className + ": " + e.getMessage(), type);
+        }
+    }
+
+    private AnnotationMirror annotationOf(TypeElement type) {
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(ExecutionOrder.class.getName())) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    static String source(String className, String regex, String[] table) {
+        int packageEnd = className.lastIndexOf('.');
+        StringBuilder source = new StringBuilder();
+        if (packageEnd > 0) {
+            source.append("package ").append(className, 0, packageEnd).append(";\n\n");
+        }
+        source.append("// Generado por ").append(ExecutionOrderProcessor.class.getName()).append(", no editar\n");
+        source.append("public final class ").append(className.substring(packageEnd + 1)).append(" {\n\n");
+        source.append("    public static final String ").append(PrecompiledTable.PATTERN_FIELD).append(" = ")
+                .append(literal(regex)).append(";\n\n");
+        source.append("    public static final String[] ").append(PrecompiledTable.TABLE_FIELD).append(" = {\n");
+        for (int i = 0; i < table.length; i++) {
+            source.append("        ").append(literal(table[i])).append(i + 1 < table.length ? ",\n" : "\n");
+        }
+        source.append("    };\n\n");
+        source.append("    private ").append(className.substring(packageEnd + 1)).append("() {\n    }\n}\n");
+        return source.toString();
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
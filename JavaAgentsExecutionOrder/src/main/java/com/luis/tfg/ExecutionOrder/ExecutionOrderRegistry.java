@@ -1,55 +1,186 @@
 package com.luis.tfg.ExecutionOrder;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.ref.WeakReference;
 
+/**
+ * Asocia cada instancia con su StateMachine.
+ *
+ * <p>Las instancias tejidas por el agente implementan {@link ExecutionOrderTracked} y guardan la
+ * StateMachine en su propio campo; el mapa sólo se usa para objetos registrados a mano, por
+ * ejemplo clases que ya estaban cargadas cuando se instaló el agente. El mapa compara las instancias
+ * por identidad y no las retiene: la entrada desaparece cuando se recoge el objeto.</p>
+ *
+ * <p>Cuando una instancia llega a un estado terminal (final y sin más llamadas posibles que
+ * {@code FINAL}) su protocolo ha terminado: se cuenta como completada y, si estaba en el mapa, se
+ * quita de él sin esperar a que se recoja. Después {@link #getStateMachine(Object)} devuelve null
+ * para ella. Con {@code -Dexecutionorder.evict=false} las instancias se conservan hasta que se
+ * recogen. Los patrones compilados de forma perezosa no detectan los estados terminales.</p>
+ */
 public class ExecutionOrderRegistry {
 
-    private static final ConcurrentHashMap<Object, StateMachine> stateMachineMap = new ConcurrentHashMap<>();
+    private static final WeakIdentityMap<Object, StateMachine> stateMachineMap = new WeakIdentityMap<>();
+    // Instancias quitadas del mapa al llegar a un estado terminal, hasta que se recogen
+    // (ver ExecutionOrderSnapshot)
+    private static final WeakIdentityMap<Object, Boolean> releasedInstances = new WeakIdentityMap<>();
+    // Motor de las StateMachine que se registren a partir de ahora
+    // (-Dexecutionorder.engine=concurrent para instancias que se usan desde varios hilos)
+    private static volatile StateMachine.Engine engine = StateMachine.Engine.valueOf(
+            System.getProperty("executionorder.engine", "table").toUpperCase());
+    private static final boolean evictTerminal = Boolean.parseBoolean(
+            System.getProperty("executionorder.evict", "true"));
+    // -Dexecutionorder.debug=true escribe cada búsqueda de StateMachine y cada salida de un método tejido
+    static final boolean DEBUG = Boolean.getBoolean("executionorder.debug");
 
+    public static StateMachine.Engine getEngine() {
+        return engine;
+    }
+
+    public static void setEngine(StateMachine.Engine newEngine) {
+        engine = newEngine;
+    }
+
+    /**
+     * Crea la StateMachine de la instancia. Es lo que hace el constructor tejido de cada instancia,
+     * así que para las instancias tejidas no escribe nada salvo que ya estuvieran registradas.
+     */
     public static void register(Object instance, String executionOrderRegex) {
-        System.out.println("[INFO] Registering StateMachine for instance: " + instance);
+        if (instance instanceof ExecutionOrderTracked) {
+            ExecutionOrderTracked tracked = (ExecutionOrderTracked) instance;
+            if (tracked.getExecutionOrderStateMachine() != null) {
+                System.out.println("[WARNING] StateMachine already exists for instance: " + instance);
+                return;
+            }
+            StateMachine stateMachine = new StateMachine(automatonFor(instance, executionOrderRegex), engine);
+            tracked.setExecutionOrderStateMachine(stateMachine);
+            onRegistered(instance, stateMachine);
+            return;
+        }
 
-        // Evitar duplicados
-        if (stateMachineMap.containsKey(instance)) {
+        System.out.println("[INFO] Registering StateMachine for instance: " + instance);
+        // Crear y registrar StateMachine, evitando duplicados
+        StateMachine stateMachine = new StateMachine(automatonFor(instance, executionOrderRegex), engine);
+        if (stateMachineMap.putIfAbsent(instance, stateMachine) != null) {
             System.out.println("[WARNING] StateMachine already exists for instance: " + instance);
             return;
         }
-
-        // Crear y registrar StateMachine
-        StateMachine stateMachine = new StateMachine(executionOrderRegex);
-        stateMachineMap.put(instance, stateMachine);
+        onRegistered(instance, stateMachine);
 
         System.out.println("[INFO] StateMachine registered for instance: " + instance + " with transitions: "
                 + stateMachine.getTransitions());
-        printStateMachineMap();
+        printCounters();
+    }
+
+    private static void onRegistered(Object instance, StateMachine stateMachine) {
+        ExecutionOrderStats.instanceRegistered();
+        if (ProtocolCompletion.mode() == ProtocolCompletion.Mode.CLEANER) {
+            ProtocolCompletion.track(instance, stateMachine);
+        }
+        if (evictTerminal) {
+            stateMachine.release = new Release(instance);
+        }
+    }
+
+    /**
+     * Si la instancia estaba en el mapa y se ha quitado de él al llegar a un estado terminal.
+     */
+    static boolean isReleased(Object instance) {
+        return releasedInstances.containsKey(instance);
+    }
+
+    /**
+     * Número de instancias en el mapa.
+     */
+    static int size() {
+        return stateMachineMap.size();
+    }
+
+    /**
+     * Resumen del registro en una línea, en lugar de recorrer el mapa en cada registro.
+     */
+    public static void printCounters() {
+        ExecutionOrderStats stats = ExecutionOrderStats.getInstance();
+        System.out.println("[INFO] Registry: " + stateMachineMap.size() + " instances in map, "
+                + stats.getRegisteredInstances() + " registered, " + stats.getEvictedInstances() + " evicted");
+    }
+
+    /**
+     * Autómata del patrón; si es la primera vez, a partir de la tabla precompilada de la clase de la
+     * instancia cuando la hay (ver {@link ExecutionOrderProcessor}).
+     */
+    private static ExecutionOrderAutomaton automatonFor(Object instance, String executionOrderRegex) {
+        Class<?> type = instance.getClass();
+        return ExecutionOrderAutomaton.forPattern(executionOrderRegex, type.getName(), type.getClassLoader());
     }
 
+    /**
+     * StateMachine de la instancia, o null si no tiene. No escribe nada salvo con
+     * {@code -Dexecutionorder.debug=true}: la usan las exportaciones y los guardados de cursores.
+     */
     public static StateMachine getStateMachine(Object instance) {
-        System.out.println("[INFO] Fetching StateMachine for instance: " + instance);
-        StateMachine stateMachine = stateMachineMap.get(instance);
+        StateMachine stateMachine = instance instanceof ExecutionOrderTracked
+                ? ((ExecutionOrderTracked) instance).getExecutionOrderStateMachine()
+                : stateMachineMap.get(instance);
 
-        if (stateMachine == null) {
-            System.out.println("[ERROR] StateMachine NOT FOUND for instance: " + instance);
-        } else {
-            System.out.println("[INFO] StateMachine fetched for instance: " + instance);
+        if (DEBUG) {
+            System.out.println(stateMachine == null
+                    ? "[ERROR] StateMachine NOT FOUND for instance: " + instance
+                    : "[INFO] StateMachine fetched for instance: " + instance);
         }
-
         return stateMachine;
     }
     
     public static void validateInstance(Object instance) {
-        if (!stateMachineMap.containsKey(instance)) {
+        if (getStateMachine(instance) == null) {
             System.out.println("[ERROR] Instance not registered: " + instance);
             System.out.println("[INFO] Available instances in registry: ");
-            stateMachineMap.keySet().forEach(key -> System.out.println("    " + key));
+            stateMachineMap.forEach((key, value) -> System.out.println("    " + key));
         }
     }
 
 
+    /**
+     * Escribe todas las entradas del mapa; sólo para depuración.
+     */
     public static void printStateMachineMap() {
         System.out.println("[INFO] Current StateMachineMap content:");
         stateMachineMap.forEach((key, value) -> {
             System.out.println("    Instance: " + key + " -> StateMachine: " + value);
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Liberación de una instancia cuando su StateMachine llega a un estado terminal. No retiene la
+     * instancia, que puede recogerse antes.
+     */
+    static final class Release extends WeakReference<Object> {
+        private final String className;
+        private boolean released;
+
+        Release(Object instance) {
+            super(instance);
+            this.className = instance.getClass().getName();
+        }
+
+        void release(StateMachine stateMachine) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            stateMachine.release = null;
+            Object instance = get();
+            // Las tejidas conservan la StateMachine en su campo: no hay nada que quitar. La marca se
+            // pone antes de quitarla para que siempre tenga una de las dos
+            if (instance != null && !(instance instanceof ExecutionOrderTracked)) {
+                releasedInstances.putIfAbsent(instance, Boolean.TRUE);
+                if (stateMachineMap.remove(instance) != null) {
+                    ExecutionOrderStats.instanceEvicted();
+                } else {
+                    releasedInstances.remove(instance);
+                }
+            }
+            ProtocolCompletion.released(stateMachine, className);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Exportación e importación del progreso de una instancia en su protocolo, para que sobreviva a un
+ * reinicio de la JVM junto con el resto del estado de la instancia.
+ *
+ * <p>Una instantánea ocupa {@link #SIZE} bytes: la huella de la {@link TransitionTable} del patrón
+ * y el cursor de la StateMachine. Al restaurarla se comprueba que la huella coincide con la de la
+ * tabla actual, de modo que un cambio del patrón o de la forma de compilarlo se detecta en lugar de
+ * dejar la instancia en un estado que no le corresponde. Los patrones compilados de forma perezosa
+ * no se pueden guardar, porque sus estados se numeran en el orden en que se descubren. Para guardar
+ * muchas instancias en un fichero, ver {@link MappedCursorStore}.</p>
+ *
+ * <p>Una instancia registrada sin tejer que llega a un estado terminal se libera del registro (ver
+ * {@link ExecutionOrderRegistry}) y ya no tiene StateMachine. Como en
+ * {@link ProtocolCompletion#complete(Object)}, se considera que ha terminado su protocolo: el
+ * registro la recuerda mientras no se recoja y se exporta una instantánea de protocolo terminado,
+ * que al restaurarse lleva la StateMachine al estado terminal del patrón y la vuelve a liberar. Una
+ * instancia que nunca se ha registrado no se puede exportar.</p>
+ */
+public final class ExecutionOrderSnapshot {
+
+    public static final int SIZE = 2 * Long.BYTES;
+    // Huella de una instantánea de protocolo terminado; ninguna tabla la tiene (ver TransitionTable.fingerprint())
+    static final long FINISHED = -1L;
+
+    private ExecutionOrderSnapshot() {
+    }
+
+    /**
+     * Instantánea del progreso de la instancia; si el registro la ha liberado, la de protocolo terminado.
+     *
+     * @throws IllegalStateException si la instancia no está registrada.
+     */
+    public static byte[] export(Object instance) {
+        ByteBuffer snapshot = ByteBuffer.allocate(SIZE);
+        writeInstance(instance, snapshot, 0);
+        return snapshot.array();
+    }
+
+    /**
+     * Lleva la StateMachine de la instancia al punto del protocolo guardado en {@code snapshot}.
+     *
+     * @throws IllegalArgumentException si la instantánea no es de este patrón, o es de protocolo
+     *                                  terminado y la tabla del patrón es perezosa.
+     */
+    public static void restore(Object instance, byte[] snapshot) {
+        if (snapshot.length != SIZE) {
+            throw new IllegalArgumentException("Invalid execution order snapshot length: " + snapshot.length);
+        }
+        read(stateMachineOf(instance), ByteBuffer.wrap(snapshot), 0);
+    }
+
+    /**
+     * Como {@link #write(StateMachine, ByteBuffer, int)} con la StateMachine de la instancia, o la
+     * instantánea de protocolo terminado si el registro la ha liberado.
+     *
+     * @throws IllegalStateException si la instancia no está registrada.
+     */
+    static void writeInstance(Object instance, ByteBuffer target, int offset) {
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
+        if (stateMachine != null) {
+            write(stateMachine, target, offset);
+        } else if (ExecutionOrderRegistry.isReleased(instance)) {
+            target.putLong(offset, FINISHED);
+            target.putLong(offset + Long.BYTES, 0L);
+        } else {
+            throw new IllegalStateException("StateMachine not found for instance: " + instance);
+        }
+    }
+
+    /**
+     * Escribe la instantánea en {@code target} a partir de {@code offset}, sin mover su posición.
+     */
+    static void write(StateMachine stateMachine, ByteBuffer target, int offset) {
+        target.putLong(offset, stateMachine.getAutomaton().getTransitionTable().fingerprint());
+        target.putLong(offset + Long.BYTES, stateMachine.getCursor());
+    }
+
+    /**
+     * Lee una instantánea escrita con {@link #write(StateMachine, ByteBuffer, int)} y la restaura.
+     */
+    static void read(StateMachine stateMachine, ByteBuffer source, int offset) {
+        long fingerprint = source.getLong(offset);
+        long cursor = source.getLong(offset + Long.BYTES);
+        if (fingerprint == FINISHED) {
+            stateMachine.restoreFinished();
+            return;
+        }
+        if (fingerprint != stateMachine.getAutomaton().getTransitionTable().fingerprint()) {
+            throw new IllegalArgumentException("Execution order snapshot does not match pattern: "
+                    + stateMachine.getAutomaton().getRegex());
+        }
+        stateMachine.restoreCursor(cursor);
+    }
+
+    static StateMachine stateMachineOf(Object instance) {
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
+        if (stateMachine == null) {
+            throw new IllegalStateException("StateMachine not found for instance: " + instance);
+        }
+        return stateMachine;
+    }
+}
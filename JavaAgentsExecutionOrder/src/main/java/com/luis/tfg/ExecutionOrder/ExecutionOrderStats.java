@@ -0,0 +1,149 @@
+package com.luis.tfg.ExecutionOrder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores del agente y su {@link ExecutionOrderStatsMXBean}.
+ *
+ * <p>Los contadores son {@link LongAdder}, así que los hilos que registran instancias o validan
+ * llamadas a la vez no compiten por la misma variable. Las transiciones se cuentan en cada llamada
+ * válida; con {@code -Dexecutionorder.stats=false} no se cuentan. El MXBean se registra en el
+ * servidor de la plataforma al arrancar el agente.</p>
+ */
+public final class ExecutionOrderStats implements ExecutionOrderStatsMXBean {
+
+    public static final String OBJECT_NAME = "com.luis.tfg.ExecutionOrder:type=ExecutionOrderStats";
+
+    static final boolean COUNT_TRANSITIONS = Boolean.parseBoolean(System.getProperty("executionorder.stats", "true"));
+
+    private static final ExecutionOrderStats INSTANCE = new ExecutionOrderStats();
+
+    private static final LongAdder registered = new LongAdder();
+    private static final LongAdder released = new LongAdder();
+    private static final LongAdder transitions = new LongAdder();
+    private static final LongAdder violations = new LongAdder();
+    private static final LongAdder evicted = new LongAdder();
+    private static final ConcurrentHashMap<String, LongAdder> completedByClass = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> abandonedByClass = new ConcurrentHashMap<>();
+
+    // Última lectura de getTransitionsPerSecond, protegida por el monitor de la instancia
+    private long lastSampleNanos = System.nanoTime();
+    private long lastSampleCount;
+    private double lastRate;
+
+    private ExecutionOrderStats() {
+    }
+
+    public static ExecutionOrderStats getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registra el MXBean en el servidor de la plataforma; si ya estaba registrado no hace nada.
+     */
+    public static void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            System.out.println("[INFO] ExecutionOrder statistics registered as " + OBJECT_NAME);
+        } catch (InstanceAlreadyExistsException e) {
+            // Ya registrado
+        } catch (JMException e) {
+            System.out.println("[WARNING] Cannot register ExecutionOrder statistics MXBean: " + e);
+        }
+    }
+
+    static void instanceRegistered() {
+        registered.increment();
+    }
+
+    static void transition() {
+        transitions.increment();
+    }
+
+    static void violation() {
+        violations.increment();
+    }
+
+    static void instanceEvicted() {
+        evicted.increment();
+    }
+
+    static void instanceReleased(String className, boolean completed) {
+        released.increment();
+        (completed ? completedByClass : abandonedByClass).computeIfAbsent(className, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public long getRegisteredInstances() {
+        return registered.sum();
+    }
+
+    @Override
+    public long getOpenInstances() {
+        return registered.sum() - released.sum();
+    }
+
+    @Override
+    public long getEvictedInstances() {
+        return evicted.sum();
+    }
+
+    @Override
+    public int getCompiledPatternCount() {
+        return ExecutionOrderAutomaton.compiledPatternCount();
+    }
+
+    @Override
+    public Map<String, Integer> getPatternStateCounts() {
+        return ExecutionOrderAutomaton.patternStateCounts();
+    }
+
+    @Override
+    public long getTransitionCount() {
+        return transitions.sum();
+    }
+
+    @Override
+    public synchronized double getTransitionsPerSecond() {
+        long now = System.nanoTime();
+        long count = transitions.sum();
+        long elapsed = now - lastSampleNanos;
+        // Lecturas muy seguidas devuelven la tasa anterior
+        if (elapsed >= 100_000_000L) {
+            lastRate = (count - lastSampleCount) * 1e9 / elapsed;
+            lastSampleNanos = now;
+            lastSampleCount = count;
+        }
+        return lastRate;
+    }
+
+    @Override
+    public long getViolationCount() {
+        return violations.sum();
+    }
+
+    @Override
+    public Map<String, Long> getCompletedInstancesByClass() {
+        return snapshot(completedByClass);
+    }
+
+    @Override
+    public Map<String, Long> getAbandonedInstancesByClass() {
+        return snapshot(abandonedByClass);
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((className, count) -> snapshot.put(className, count.sum()));
+        return snapshot;
+    }
+}
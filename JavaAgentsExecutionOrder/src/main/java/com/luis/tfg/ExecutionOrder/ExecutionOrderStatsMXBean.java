@@ -0,0 +1,48 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.Map;
+
+/**
+ * Estadísticas del agente publicadas por JMX como
+ * {@code com.luis.tfg.ExecutionOrder:type=ExecutionOrderStats} (ver {@link ExecutionOrderStats}).
+ */
+public interface ExecutionOrderStatsMXBean {
+
+    /** Instancias con StateMachine registradas desde el arranque. */
+    long getRegisteredInstances();
+
+    /**
+     * Instancias registradas que todavía no se han cerrado con {@link ProtocolCompletion#complete(Object)}
+     * ni liberado al llegar a un estado terminal. No es el número de instancias vivas: las recogidas
+     * sólo se descuentan con {@code -Dexecutionorder.completion=cleaner}, el único modo que vigila
+     * cada instancia con un {@link java.lang.ref.Cleaner}. En modo EXIT vigilarlas haría mucho más
+     * caro cada constructor tejido, así que las que se abandonan sin cerrar siguen contando.
+     */
+    long getOpenInstances();
+
+    /**
+     * Instancias quitadas del mapa del registro al llegar a un estado terminal (ver
+     * {@link ExecutionOrderRegistry}). Las tejidas guardan la StateMachine en su campo y no cuentan.
+     */
+    long getEvictedInstances();
+
+    int getCompiledPatternCount();
+
+    /** Número de estados de cada patrón compilado (en una tabla perezosa, los calculados hasta ahora). */
+    Map<String, Integer> getPatternStateCounts();
+
+    /** Llamadas válidas a métodos de instancias registradas. */
+    long getTransitionCount();
+
+    /** Llamadas válidas por segundo desde la lectura anterior de este atributo. */
+    double getTransitionsPerSecond();
+
+    /** Llamadas fuera de orden en métodos tejidos, lanzadas o sólo contadas en modo auditoría. */
+    long getViolationCount();
+
+    /** Instancias cerradas o recogidas en un estado final, por clase. */
+    Map<String, Long> getCompletedInstancesByClass();
+
+    /** Instancias cerradas o recogidas sin terminar su protocolo, por clase. */
+    Map<String, Long> getAbandonedInstancesByClass();
+}
@@ -0,0 +1,17 @@
+package com.luis.tfg.ExecutionOrder;
+
+/**
+ * Interfaz que el {@link MethodOrderAgent} añade a las clases anotadas con {@link ExecutionOrder}.
+ *
+ * <p>La StateMachine de cada instancia se guarda en un campo sintético de la propia instancia,
+ * así que consultarla es una lectura de campo y se libera junto con el objeto.</p>
+ */
+public interface ExecutionOrderTracked {
+
+    /** Nombre del campo sintético que guarda la StateMachine de la instancia. */
+    String STATE_MACHINE_FIELD = "executionOrder$stateMachine";
+
+    StateMachine getExecutionOrderStateMachine();
+
+    void setExecutionOrderStateMachine(StateMachine stateMachine);
+}
@@ -0,0 +1,89 @@
+package com.luis.tfg.ExecutionOrder;
+
+/**
+ * Excepción sin pila de una llamada fuera de orden, para {@link Strategy#STACKLESS}.
+ *
+ * <p>Con la estrategia por defecto, {@link Strategy#DETAILED}, el código tejido escribe el error y
+ * lanza una {@link SecurityException} que envuelve la {@link IllegalStateException} de la
+ * StateMachine, las dos con su pila y su mensaje. Cuando una aplicación rechaza miles de llamadas
+ * por segundo ese coste domina; con {@code -javaagent:agente.jar=rejection=stackless} se lanza en
+ * su lugar esta excepción, que no recorre la pila y sólo guarda el estado y el símbolo del método.
+ * El mensaje se construye si alguien lo pide. Sigue siendo una {@link SecurityException}, así que
+ * los {@code catch} existentes la capturan igual.</p>
+ */
+public class ExecutionOrderViolation extends SecurityException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Cómo rechaza el código tejido una llamada fuera de orden.
+     */
+    public enum Strategy {
+        /** Mensaje de error y excepciones con pila. */
+        DETAILED,
+        /** {@link ExecutionOrderViolation} sin pila ni mensaje de error. */
+        STACKLESS
+    }
+
+    private static volatile Strategy strategy = Strategy.DETAILED;
+
+    private final transient TransitionTable table;
+    private final int state;
+    private final int symbol;
+
+    ExecutionOrderViolation(TransitionTable table, int state, int symbol) {
+        this.table = table;
+        this.state = state;
+        this.symbol = symbol;
+    }
+
+    public static Strategy getStrategy() {
+        return strategy;
+    }
+
+    public static void setStrategy(Strategy newStrategy) {
+        strategy = newStrategy;
+    }
+
+    static boolean isStackless() {
+        return strategy == Strategy.STACKLESS;
+    }
+
+    /**
+     * No recorre la pila, que es lo más caro de construir una excepción.
+     */
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+
+    /**
+     * Número del estado desde el que se hizo la llamada en la {@link TransitionTable} del patrón.
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * Símbolo del método llamado en la {@link SymbolTable} del patrón.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    public String getStateId() {
+        return table != null ? table.getGraphState(state).getId() : String.valueOf(state);
+    }
+
+    public String getMethodName() {
+        return table != null ? table.getSymbols().name(symbol) : String.valueOf(symbol);
+    }
+
+    @Override
+    public String getMessage() {
+        if (table == null) {
+            return "Invalid transition from state " + state + " with symbol " + symbol;
+        }
+        return table.rejection(state, getMethodName()).getMessage();
+    }
+}
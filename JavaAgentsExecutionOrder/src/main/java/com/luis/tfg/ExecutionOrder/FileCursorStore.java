@@ -0,0 +1,152 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CursorStore} en un fichero local de registro: cada lote se añade al final con una única
+ * escritura y se sincroniza con el disco, y la instantánea vigente de cada clave es la última
+ * escrita.
+ *
+ * <p>El contenido se mantiene en memoria. Antes de cada operación se leen los registros que otra
+ * JVM haya añadido desde la última vez, así que varias JVM pueden usar el mismo fichero por turnos;
+ * no está pensado para escrituras simultáneas de varias JVM. Un registro a medio escribir al final
+ * del fichero se ignora hasta que esté completo.</p>
+ */
+public final class FileCursorStore implements CursorStore {
+
+    private static final int MAGIC = 0x454f434c;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // Longitud de un registro de borrado
+    private static final int REMOVED = -1;
+
+    private final Path path;
+    private final RandomAccessFile file;
+    // Protegidos por this
+    private final Map<String, byte[]> snapshots = new HashMap<>();
+    private long readPosition = HEADER_SIZE;
+
+    private FileCursorStore(Path path, RandomAccessFile file) {
+        this.path = path;
+        this.file = file;
+    }
+
+    /**
+     * Abre el fichero, creándolo si no existe.
+     *
+     * @throws IOException si el fichero existe pero no es un almacén de cursores.
+     */
+    public static FileCursorStore open(Path path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            if (file.length() == 0) {
+                file.writeInt(MAGIC);
+                file.writeInt(FORMAT_VERSION);
+                file.getFD().sync();
+            } else if (file.length() < HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a cursor store: " + path);
+            }
+            FileCursorStore store = new FileCursorStore(path, file);
+            synchronized (store) {
+                store.refresh();
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized byte[] load(String key) throws IOException {
+        refresh();
+        byte[] snapshot = snapshots.get(key);
+        return snapshot != null ? snapshot.clone() : null;
+    }
+
+    @Override
+    public synchronized void storeAll(Map<String, byte[]> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        refresh();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+            out.writeUTF(entry.getKey());
+            byte[] snapshot = entry.getValue();
+            if (snapshot == null) {
+                out.writeInt(REMOVED);
+            } else {
+                out.writeInt(snapshot.length);
+                out.write(snapshot);
+            }
+        }
+        file.seek(file.length());
+        file.write(bytes.toByteArray());
+        file.getFD().sync();
+        readPosition = file.length();
+        batch.forEach((key, snapshot) -> {
+            if (snapshot == null) {
+                snapshots.remove(key);
+            } else {
+                snapshots.put(key, snapshot.clone());
+            }
+        });
+    }
+
+    public synchronized int size() throws IOException {
+        refresh();
+        return snapshots.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Lee los registros añadidos desde la última lectura.
+     */
+    private void refresh() throws IOException {
+        long length = file.length();
+        if (length <= readPosition) {
+            return;
+        }
+        if (length - readPosition > Integer.MAX_VALUE) {
+            throw new IOException("Cursor store too large: " + path);
+        }
+        byte[] tail = new byte[(int) (length - readPosition)];
+        file.seek(readPosition);
+        file.readFully(tail);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(tail));
+        int consumed = 0;
+        try {
+            while (consumed < tail.length) {
+                String key = in.readUTF();
+                int size = in.readInt();
+                if (size == REMOVED) {
+                    snapshots.remove(key);
+                } else {
+                    byte[] snapshot = new byte[size];
+                    in.readFully(snapshot);
+                    snapshots.put(key, snapshot);
+                }
+                consumed = tail.length - in.available();
+            }
+        } catch (EOFException e) {
+            // Registro incompleto: otra JVM lo está escribiendo
+        }
+        readPosition += consumed;
+    }
+}
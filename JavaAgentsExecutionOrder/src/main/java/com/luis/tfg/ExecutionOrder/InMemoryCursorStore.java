@@ -0,0 +1,47 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link CursorStore} en memoria. Cuenta las lecturas y los lotes que recibe, así que sirve también
+ * de almacén falso en los tests para comprobar cuántas veces se accede al almacén.
+ */
+public class InMemoryCursorStore implements CursorStore {
+
+    private final Map<String, byte[]> snapshots = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    @Override
+    public byte[] load(String key) {
+        loads.increment();
+        byte[] snapshot = snapshots.get(key);
+        return snapshot != null ? snapshot.clone() : null;
+    }
+
+    @Override
+    public void storeAll(Map<String, byte[]> batch) {
+        batches.increment();
+        batch.forEach((key, snapshot) -> {
+            if (snapshot == null) {
+                snapshots.remove(key);
+            } else {
+                snapshots.put(key, snapshot.clone());
+            }
+        });
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+}
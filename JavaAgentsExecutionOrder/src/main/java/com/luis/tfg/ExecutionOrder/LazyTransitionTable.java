@@ -0,0 +1,187 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.*;
+
+/**
+ * {@link TransitionTable} que construye los estados del AFD a medida que los cursores llegan a
+ * ellos, para patrones muy largos o anchos en los que la tabla completa sería grande y lenta de
+ * calcular.
+ *
+ * <p>Cada estado es un conjunto de estados del AFN de {@link PatternCompiler} y su fila se calcula
+ * con la construcción de subconjuntos la primera vez que un cursor sale de él. No se minimiza, así
+ * que puede tener más estados que la tabla completa, pero sólo los de los caminos recorridos.</p>
+ *
+ * <p>Sólo las filas están acotadas: se guardan en una caché de {@code cacheSize} filas y al superarla
+ * se descarta la más antigua, que se vuelve a calcular si algún cursor regresa a ese estado. El
+ * resto de lo que se sabe de cada estado descubierto (su conjunto del AFN, su entrada en el índice
+ * de conjuntos y su {@link State} con las transiciones ya recorridas) se conserva mientras viva el
+ * autómata, que se comparte entre todas las instancias del patrón: los cursores guardan el número
+ * del estado y tiene que seguir designando el mismo conjunto. Así que la memoria de la tabla crece
+ * con el número de estados distintos que alcanzan los cursores, no con el tamaño de la caché, que
+ * sólo evita guardar para cada uno de ellos su fila de un entero por símbolo.</p>
+ *
+ * <p>Los cursores leen las filas sin bloqueo; sólo calcular una fila nueva se hace bajo el cerrojo
+ * de la tabla. Los patrones con contadores o máscaras no se compilan de esta forma.</p>
+ */
+final class LazyTransitionTable extends TransitionTable {
+
+    private final PatternCompiler compiler;
+    private final SymbolTable symbols;
+    private final int cacheSize;
+    private final Object lock = new Object();
+
+    // Protegidos por lock. Crecen con cada estado descubierto y no se descartan (ver arriba)
+    private final List<BitSet> subsets = new ArrayList<>();
+    private final Map<BitSet, Integer> index = new HashMap<>();
+    private final List<State> graphStates = new ArrayList<>();
+    private final Map<String, Integer> occurrences = new HashMap<>();
+    private final BitSet linked = new BitSet();
+    private final Deque<Integer> cached = new ArrayDeque<>();
+
+    // Fila de cada estado; null si todavía no se ha calculado o se ha descartado de la caché
+    private volatile Row[] rows = new Row[16];
+
+    LazyTransitionTable(PatternCompiler compiler, int cacheSize) {
+        super(compiler.getSymbols());
+        this.compiler = compiler;
+        this.symbols = compiler.getSymbols();
+        this.cacheSize = Math.max(1, cacheSize);
+        synchronized (lock) {
+            discover(compiler.initialSubset(), SymbolTable.UNKNOWN - 1);
+        }
+    }
+
+    @Override
+    public int next(int state, int symbol) {
+        return row(state).next[symbol];
+    }
+
+    @Override
+    long step(long cursor, int symbol) {
+        int target = row(state(cursor)).next[symbol];
+        return target == NO_TRANSITION ? REJECTED : target;
+    }
+
+    @Override
+    public boolean isFinal(int state) {
+        return row(state).isFinal;
+    }
+
+    @Override
+    public int getStateCount() {
+        synchronized (lock) {
+            return subsets.size();
+        }
+    }
+
+    @Override
+    public State getGraphState(int state) {
+        synchronized (lock) {
+            return graphStates.get(state);
+        }
+    }
+
+    @Override
+    boolean isLazy() {
+        return true;
+    }
+
+    @Override
+    IllegalStateException rejection(int state, String methodName) {
+        return rejection(row(state).rejection, getGraphState(state).getId(), methodName);
+    }
+
+    /**
+     * Filas calculadas que hay ahora en la caché.
+     */
+    int cachedRowCount() {
+        synchronized (lock) {
+            return cached.size();
+        }
+    }
+
+    private Row row(int state) {
+        Row[] current = rows;
+        Row row = state < current.length ? current[state] : null;
+        return row != null ? row : materialize(state);
+    }
+
+    private Row materialize(int state) {
+        synchronized (lock) {
+            Row[] current = rows;
+            if (current[state] != null) {
+                return current[state];
+            }
+
+            BitSet subset = subsets.get(state);
+            int[] next = compiler.expand(subset, this::discover).row;
+            int kind = compiler.kindOf(subset);
+            compiler.addPostFinalCalls(next, state, kind);
+            Row row = new Row(next, PatternCompiler.isFinal(kind), compiler.rejectionKind(kind, next));
+
+            if (!linked.get(state)) {
+                linked.set(state);
+                for (int target : next) {
+                    if (target != NO_TRANSITION) {
+                        graphStates.get(state).addTransition(graphStates.get(target));
+                    }
+                }
+            }
+
+            // discover puede haber ampliado el array
+            current = rows;
+            current[state] = row;
+            cached.add(state);
+            if (cached.size() > cacheSize) {
+                current[cached.poll()] = null;
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Número del estado del conjunto, creándolo si es la primera vez que se llega a él. El nombre
+     * es el del método con el que se ha llegado, como en la tabla completa.
+     */
+    private int discover(BitSet subset, int symbol) {
+        Integer existing = index.get(subset);
+        if (existing != null) {
+            return existing;
+        }
+        int state = subsets.size();
+        subsets.add(subset);
+        index.put(subset, state);
+
+        String name;
+        if (state == INITIAL_STATE) {
+            name = "INITIAL";
+        } else if (symbol == SymbolTable.UNKNOWN) {
+            name = ".*";
+        } else {
+            name = symbols.name(symbol);
+        }
+        int occurrence = occurrences.merge(name, 1, Integer::sum);
+        String id = occurrence == 1 ? name : name + "_" + occurrence;
+        graphStates.add(new State(id, PatternCompiler.isFinal(compiler.kindOf(subset)), 0, name));
+
+        if (state >= rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        return state;
+    }
+
+    /**
+     * Fila calculada de un estado. Los campos finales permiten leerla sin bloqueo.
+     */
+    private static final class Row {
+        final int[] next;
+        final boolean isFinal;
+        final byte rejection;
+
+        Row(int[] next, boolean isFinal, byte rejection) {
+            this.next = next;
+            this.isFinal = isFinal;
+            this.rejection = rejection;
+        }
+    }
+}
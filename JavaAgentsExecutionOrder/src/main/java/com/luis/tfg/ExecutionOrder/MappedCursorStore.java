@@ -0,0 +1,139 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fichero proyectado en memoria con las instantáneas de {@link ExecutionOrderSnapshot} de muchas
+ * instancias, una por posición.
+ *
+ * <p>La aplicación elige la posición de cada instancia (por ejemplo, el identificador con el que la
+ * guarda su capa de persistencia). Cada posición ocupa {@link ExecutionOrderSnapshot#SIZE} bytes en
+ * un lugar fijo del fichero, así que guardar o restaurar una instancia son dos accesos a memoria y
+ * el sistema operativo escribe las páginas modificadas en disco; {@link #force()} fuerza la
+ * escritura. Se pueden usar posiciones distintas desde varios hilos a la vez.</p>
+ */
+public final class MappedCursorStore implements Closeable {
+
+    private static final int MAGIC = 0x454f4353;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /** Posiciones que caben en un único {@link MappedByteBuffer}. */
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / ExecutionOrderSnapshot.SIZE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private MappedCursorStore(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Abre el fichero, creándolo con {@code capacity} posiciones vacías si no existe.
+     *
+     * @throws IOException si el fichero existe pero no es un almacén de cursores con esa capacidad.
+     */
+    public static MappedCursorStore open(Path file, int capacity) throws IOException {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid cursor store capacity: " + capacity);
+        }
+        long size = HEADER_SIZE + (long) capacity * ExecutionOrderSnapshot.SIZE;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long existing = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (existing == 0) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, capacity);
+            } else if (existing != size || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                    || buffer.getInt(8) != capacity) {
+                throw new IOException("Not a cursor store with capacity " + capacity + ": " + file);
+            }
+            return new MappedCursorStore(channel, buffer, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Guarda la instancia en su posición; si el registro ya la ha liberado por llegar a un estado
+     * terminal, como protocolo terminado (ver {@link ExecutionOrderSnapshot}).
+     *
+     * @throws IllegalStateException si la instancia no está registrada.
+     */
+    public void save(int slot, Object instance) {
+        ExecutionOrderSnapshot.writeInstance(instance, buffer, offset(slot));
+    }
+
+    public void save(int slot, StateMachine stateMachine) {
+        ExecutionOrderSnapshot.write(stateMachine, buffer, offset(slot));
+    }
+
+    /**
+     * Restaura la instancia desde su posición.
+     *
+     * @return false si la posición está vacía; la instancia se queda como estaba.
+     * @throws IllegalArgumentException si la instantánea guardada no es de este patrón.
+     */
+    public boolean restore(int slot, Object instance) {
+        return restore(slot, ExecutionOrderSnapshot.stateMachineOf(instance));
+    }
+
+    public boolean restore(int slot, StateMachine stateMachine) {
+        int offset = offset(slot);
+        // La huella nunca es 0, así que una posición a cero no se ha escrito
+        if (buffer.getLong(offset) == 0) {
+            return false;
+        }
+        ExecutionOrderSnapshot.read(stateMachine, buffer, offset);
+        return true;
+    }
+
+    public void clear(int slot) {
+        int offset = offset(slot);
+        buffer.putLong(offset, 0L);
+        buffer.putLong(offset + Long.BYTES, 0L);
+    }
+
+    /**
+     * Escribe en disco las posiciones modificadas.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Escribe las posiciones modificadas y cierra el fichero. La proyección se libera cuando el
+     * recolector descarta el almacén.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Posición del registro en el fichero. Sólo se usan accesos absolutos, que no mueven el
+     * puntero compartido del buffer.
+     */
+    private int offset(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            throw new IndexOutOfBoundsException("Cursor store slot " + slot + " out of range [0, " + capacity + ")");
+        }
+        return HEADER_SIZE + slot * ExecutionOrderSnapshot.SIZE;
+    }
+}
@@ -2,32 +2,129 @@ package com.luis.tfg.ExecutionOrder;
 
 import net.bytebuddy.asm.Advice;
 
+/**
+ * Advice que se copia en cada método de una clase anotada.
+ *
+ * <p>El código de los advice se inserta en el método tejido, así que se limita a lo imprescindible:
+ * leer la StateMachine ({@link TrackedStateMachine}), avanzar el cursor y, en el caso raro, llamar a
+ * {@link #rejected} o {@link #exited}. Los mensajes, las búsquedas y las excepciones están en esos
+ * métodos, fuera del código tejido, para que el método del usuario siga siendo pequeño y el JIT lo
+ * pueda inlinear.</p>
+ */
 public class MethodOrderAdvice {
 
     @Advice.OnMethodEnter
     public static void onMethodEnter(@Advice.This Object instance,
-                                     @Advice.Origin("#m") String methodName) {
-        System.out.println("[INFO] Intercepted method: " + methodName + " in instance: " + instance);
+                                     @MethodSymbol int methodSymbol,
+                                     @TrackedStateMachine StateMachine stateMachine) {
+        if (stateMachine == null || !stateMachine.tryTransition(methodSymbol)) {
+            rejected(instance, methodSymbol, stateMachine);
+        }
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onMethodExit(@Advice.This Object instance,
+                                    @TrackedStateMachine StateMachine stateMachine) {
+        exited(instance, stateMachine);
+    }
+
+    /**
+     * Sólo el advice de entrada, para {@link ProtocolCompletion.Mode#CLEANER}: la comprobación de
+     * estado final no se hace tras cada método sino al abandonar la instancia.
+     */
+    public static class EnterOnly {
+
+        @Advice.OnMethodEnter
+        public static void onMethodEnter(@Advice.This Object instance,
+                                         @MethodSymbol int methodSymbol,
+                                         @TrackedStateMachine StateMachine stateMachine) {
+            if (stateMachine == null || !stateMachine.tryTransition(methodSymbol)) {
+                rejected(instance, methodSymbol, stateMachine);
+            }
+        }
+    }
+
+    /**
+     * Advice para {@link ExecutionOrder.Reentrancy#OUTERMOST}: sólo la llamada más externa sobre la
+     * instancia en cada hilo avanza la StateMachine (ver {@link ReentrancyGuard}). Siempre lleva
+     * advice de salida, para cerrar la llamada; la comprobación de estado final de
+     * {@link ProtocolCompletion.Mode#EXIT} se hace sólo al salir de la más externa.
+     */
+    public static class Outermost {
+
+        @Advice.OnMethodEnter
+        public static void onMethodEnter(@Advice.This Object instance,
+                                         @MethodSymbol int methodSymbol,
+                                         @TrackedStateMachine StateMachine stateMachine) {
+            if (stateMachine == null || !ReentrancyGuard.enter(stateMachine, methodSymbol)) {
+                rejectedOutermost(instance, methodSymbol, stateMachine);
+            }
+        }
+
+        @Advice.OnMethodExit(onThrowable = Throwable.class)
+        public static void onMethodExit(@Advice.This Object instance,
+                                        @TrackedStateMachine StateMachine stateMachine) {
+            if (ReentrancyGuard.exit(stateMachine)) {
+                exitedOutermost(instance, stateMachine);
+            }
+        }
+    }
 
-        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
+    /**
+     * Como {@link #rejected}, pero si se lanza la excepción el método no llega a ejecutarse ni su
+     * advice de salida, así que la llamada abierta por {@link ReentrancyGuard#enter} se cierra aquí.
+     */
+    public static void rejectedOutermost(Object instance, int methodSymbol, StateMachine stateMachine) {
+        try {
+            rejected(instance, methodSymbol, stateMachine);
+        } catch (RuntimeException e) {
+            ReentrancyGuard.exit(stateMachine);
+            throw e;
+        }
+    }
+
+    public static void exitedOutermost(Object instance, StateMachine stateMachine) {
+        if (ProtocolCompletion.mode() == ProtocolCompletion.Mode.EXIT) {
+            exited(instance, stateMachine);
+        }
+    }
+
+    /**
+     * Llamada no permitida, o instancia sin StateMachine: lanza la excepción correspondiente. En
+     * {@link ViolationAudit.Mode#AUDIT} la llamada no permitida sólo se cuenta, y con
+     * {@link ExecutionOrderViolation.Strategy#STACKLESS} se lanza sin escribir nada.
+     */
+    public static void rejected(Object instance, int methodSymbol, StateMachine stateMachine) {
         if (stateMachine == null) {
             System.out.println("[ERROR] StateMachine NOT FOUND for instance: " + instance);
             throw new IllegalStateException("StateMachine not found for instance: " + instance);
         }
 
-        try {
-            stateMachine.validateTransition(methodName);
-        } catch (IllegalStateException e) {
-            System.out.println("[ERROR] Invalid method order: " + methodName + " for instance: " + instance);
-            throw new SecurityException("Invalid transition from current state in StateMachine", e);
+        ExecutionOrderStats.violation();
+        if (ViolationAudit.isAuditing()) {
+            ViolationAudit.record(instance.getClass(), stateMachine, methodSymbol);
+            return;
         }
+        if (ExecutionOrderViolation.isStackless()) {
+            throw new ExecutionOrderViolation(stateMachine.getAutomaton().getTransitionTable(),
+                    stateMachine.currentState(), methodSymbol);
+        }
+
+        IllegalStateException e = stateMachine.rejection(methodSymbol);
+        System.out.println("[ERROR] Invalid method order: " + e.getMessage() + " for instance: " + instance);
+        throw new SecurityException("Invalid transition from current state in StateMachine", e);
     }
 
-    @Advice.OnMethodExit(onThrowable = Throwable.class)
-    public static void onMethodExit(@Advice.This Object instance) {
+    /**
+     * Informe de {@link ProtocolCompletion.Mode#EXIT} tras cada método, sólo con
+     * {@code -Dexecutionorder.debug=true}: escribe la instancia con su {@code toString()}.
+     */
+    public static void exited(Object instance, StateMachine stateMachine) {
+        if (!ExecutionOrderRegistry.DEBUG) {
+            return;
+        }
         System.out.println("[INFO] Exiting method in instance: " + instance);
 
-        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
         if (stateMachine == null) {
             System.out.println("[ERROR] StateMachine NOT FOUND during method exit for instance: " + instance);
             return;
@@ -40,4 +137,4 @@ public class MethodOrderAdvice {
                     + stateMachine.getCurrentState());
         }
     }
-}
\ No newline at end of file
+}
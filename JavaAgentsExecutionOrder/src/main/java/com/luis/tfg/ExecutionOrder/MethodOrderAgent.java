@@ -1,37 +1,50 @@
 package com.luis.tfg.ExecutionOrder;
 
 import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.description.enumeration.EnumerationDescription;
+import net.bytebuddy.description.field.FieldDescription;
+import net.bytebuddy.description.field.FieldList;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.modifier.FieldPersistence;
+import net.bytebuddy.description.modifier.SyntheticState;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.bytecode.StackManipulation;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.implementation.bytecode.member.MethodInvocation;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
+import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatchers;
 
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class MethodOrderAgent {
+    /**
+     * Prefijos de nombre de clase que el agente no examina nunca: el JDK y ByteBuddy. Se pueden añadir
+     * más, separados por comas, con {@code -Dexecutionorder.ignore=com.ejemplo.,org.libreria.}.
+     */
+    static final List<String> DEFAULT_IGNORED_PREFIXES = Collections.unmodifiableList(Arrays.asList(
+            "java.", "javax.", "jdk.", "sun.", "com.sun.", "net.bytebuddy."));
+
     public static void premain(String agentArgs, Instrumentation inst) {
         System.out.println("Agente iniciado. Argumentos: " + agentArgs);
         try {
             System.out.println("El agente se está cargando correctamente.");
+            configure(arguments(agentArgs));
+            ExecutionOrderStats.registerMBean();
 
-            // Configurar el agente para interceptar todas las clases anotadas con @ExecutionOrder
-            new AgentBuilder.Default()
-                .type(ElementMatchers.any()) // Seleccionar cualquier clase
-                .transform((builder, typeDescription, classLoader, module, protectionDomain) -> {
-                    // Solo aplicar si la clase tiene la anotación @ExecutionOrder
-                    if (typeDescription.getDeclaredAnnotations()
-                            .isAnnotationPresent(ExecutionOrder.class)) {
-                        return builder
-                            .constructor(ElementMatchers.any()) // Interceptar constructores
-                            .intercept(net.bytebuddy.asm.Advice.to(ConstructorAdvice.class))
-                            .method(ElementMatchers.any()
-                                .and(ElementMatchers.not(ElementMatchers.named("toString"))) // Excluir toString
-                                .and(ElementMatchers.not(ElementMatchers.named("equals")))   // Excluir equals
-                                .and(ElementMatchers.not(ElementMatchers.named("hashCode"))) // Excluir hashCode
-                                .and(ElementMatchers.not(ElementMatchers.named("clone")))    // Excluir clone
-                                .and(ElementMatchers.not(ElementMatchers.isDeclaredBy(Object.class)))) // Excluir métodos de Object
-                            .intercept(net.bytebuddy.asm.Advice.to(MethodOrderAdvice.class));
-                    }
-                    return builder; // Si no tiene la anotación, no modificar
-                })
-                .installOn(inst);
+            inst.addTransformer(transformer(ignoredPrefixes(System.getProperty("executionorder.ignore"))));
 
             System.out.println("El agente se ha instalado correctamente.");
         } catch (Exception e) {
@@ -39,4 +52,312 @@ public class MethodOrderAgent {
             throw new RuntimeException("Error al inicializar el agente", e);
         }
     }
+
+    /**
+     * Argumentos del agente, {@code clave=valor} separados por comas
+     * ({@code -javaagent:agente.jar=mode=audit,stackSample=100}).
+     */
+    static Map<String, String> arguments(String agentArgs) {
+        Map<String, String> arguments = new LinkedHashMap<>();
+        if (agentArgs == null) {
+            return arguments;
+        }
+        for (String argument : agentArgs.split(",")) {
+            if (argument.trim().isEmpty()) {
+                continue;
+            }
+            int separator = argument.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid agent argument, expected key=value: " + argument);
+            }
+            arguments.put(argument.substring(0, separator).trim(), argument.substring(separator + 1).trim());
+        }
+        return arguments;
+    }
+
+    /**
+     * Aplica los argumentos del agente: {@code mode} ({@code enforce} o {@code audit}, ver
+     * {@link ViolationAudit}), {@code stackSample} y {@code rejection} ({@code detailed} o
+     * {@code stackless}, ver {@link ExecutionOrderViolation}).
+     */
+    static void configure(Map<String, String> arguments) {
+        for (Map.Entry<String, String> argument : arguments.entrySet()) {
+            switch (argument.getKey()) {
+                case "mode":
+                    ViolationAudit.setMode(ViolationAudit.Mode.valueOf(argument.getValue().toUpperCase()));
+                    break;
+                case "stackSample":
+                    ViolationAudit.setStackSample(Integer.parseInt(argument.getValue()));
+                    break;
+                case "rejection":
+                    ExecutionOrderViolation.setStrategy(
+                            ExecutionOrderViolation.Strategy.valueOf(argument.getValue().toUpperCase()));
+                    break;
+                default:
+                    System.out.println("[WARNING] Unknown agent argument: " + argument.getKey());
+            }
+        }
+        System.out.println("[INFO] Execution order mode: " + ViolationAudit.getMode() + ", rejection: "
+                + ExecutionOrderViolation.getStrategy());
+    }
+
+    /**
+     * Transformador del agente: sólo se transforman las clases anotadas con {@link ExecutionOrder}, y
+     * {@link ConstantPoolFilter} descarta antes de que ByteBuddy las describa las clases ignoradas y
+     * las que no mencionan la anotación.
+     */
+    static ResettableClassFileTransformer transformer(List<String> ignoredPrefixes) {
+        ElementMatcher.Junction<TypeDescription> ignored = ElementMatchers.isSynthetic();
+        for (String prefix : ignoredPrefixes) {
+            ignored = ignored.or(ElementMatchers.nameStartsWith(prefix));
+        }
+        ResettableClassFileTransformer byteBuddy = (ResettableClassFileTransformer) new AgentBuilder.Default()
+            .ignore(ignored, ElementMatchers.isBootstrapClassLoader().or(ElementMatchers.isExtensionClassLoader()))
+            .type(ElementMatchers.isAnnotatedWith(ExecutionOrder.class))
+            .transform((builder, typeDescription, classLoader, module, protectionDomain) ->
+                instrument(builder, typeDescription, classLoader))
+            .makeRaw();
+        return new ConstantPoolFilter(byteBuddy, ignoredPrefixes);
+    }
+
+    /**
+     * Prefijos por defecto más los de {@code configured} (lista separada por comas, puede ser null).
+     */
+    static List<String> ignoredPrefixes(String configured) {
+        List<String> prefixes = new ArrayList<>(DEFAULT_IGNORED_PREFIXES);
+        if (configured != null) {
+            for (String prefix : configured.split(",")) {
+                if (!prefix.trim().isEmpty()) {
+                    prefixes.add(prefix.trim());
+                }
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Aplica los advice de orden de ejecución a una clase anotada con {@link ExecutionOrder}.
+     *
+     * <p>El patrón se compila aquí, al transformar la clase, y tanto el patrón como el símbolo de cada
+     * método interceptado se escriben como constantes en el código tejido ({@link ProtocolPattern},
+     * {@link MethodSymbol}). La StateMachine de cada instancia se guarda en un campo sintético
+     * accesible a través de {@link ExecutionOrderTracked}.</p>
+     *
+     * <p>En una jerarquía de clases anotadas sólo la superior (ver {@link #protocolType}) declara el
+     * campo y registra la instancia en su constructor, y su anotación decide el patrón y la
+     * reentrada de toda la jerarquía: sus métodos ya llevan escritos los símbolos de su patrón. Las
+     * subclases anotadas sólo tejen los métodos que no vienen de una superclase tejida, con los
+     * símbolos de ese mismo patrón, y leen la StateMachine con el accesor. Un método que sobrescribe a
+     * otro tejido y llama a {@code super} cuenta como dos llamadas salvo con
+     * {@link ExecutionOrder.Reentrancy#OUTERMOST}.</p>
+     */
+    public static DynamicType.Builder<?> instrument(DynamicType.Builder<?> builder, TypeDescription typeDescription) {
+        return instrument(builder, typeDescription, null);
+    }
+
+    /**
+     * Como {@link #instrument(DynamicType.Builder, TypeDescription)}, usando la tabla que
+     * {@link ExecutionOrderProcessor} generó para la clase si {@code classLoader} la encuentra.
+     */
+    public static DynamicType.Builder<?> instrument(DynamicType.Builder<?> builder, TypeDescription typeDescription,
+                                                    ClassLoader classLoader) {
+        return instrument(builder, typeDescription, classLoader, ProtocolCompletion.mode());
+    }
+
+    /**
+     * Con {@link ProtocolCompletion.Mode#CLEANER} los métodos no llevan advice de salida.
+     */
+    static DynamicType.Builder<?> instrument(DynamicType.Builder<?> builder, TypeDescription typeDescription,
+                                             ClassLoader classLoader, ProtocolCompletion.Mode completion) {
+        TypeDescription protocolType = protocolType(typeDescription);
+        SymbolTable symbols = symbolsFor(protocolType, classLoader);
+        ElementMatcher.Junction<MethodDescription> woven = ElementMatchers.any()
+            .and(ElementMatchers.not(ElementMatchers.named("toString"))) // Excluir toString
+            .and(ElementMatchers.not(ElementMatchers.named("equals")))   // Excluir equals
+            .and(ElementMatchers.not(ElementMatchers.named("hashCode"))) // Excluir hashCode
+            .and(ElementMatchers.not(ElementMatchers.named("clone")))    // Excluir clone
+            .and(ElementMatchers.not(ElementMatchers.isDeclaredBy(Object.class))); // Excluir métodos de Object
+        if (weavesProtocolOnly(protocolType)) {
+            woven = woven.and(ElementMatchers.namedOneOf(protocolMethods(symbols)));
+        }
+        Advice methodAdvice = Advice.withCustomMapping()
+            .bind(MethodSymbol.class, new MethodSymbolMapping(symbols))
+            .bind(TrackedStateMachine.class, new StateMachineMapping())
+            .to(adviceFor(protocolType, completion));
+
+        if (!protocolType.equals(typeDescription)) {
+            if (!typeDescription.getDeclaredAnnotations().ofType(ExecutionOrder.class)
+                    .equals(protocolType.getDeclaredAnnotations().ofType(ExecutionOrder.class))) {
+                System.out.println("[WARNING] @ExecutionOrder of " + typeDescription.getName() + " differs from the one of "
+                        + protocolType.getName() + ", its instances follow " + pattern(protocolType));
+            }
+            // Los métodos de las superclases tejidas ya llevan el advice
+            return builder
+                .method(woven.and(ElementMatchers.not(ElementMatchers.isDeclaredBy(
+                        ElementMatchers.anyOf(wovenSuperclasses(typeDescription))))))
+                .intercept(methodAdvice);
+        }
+
+        return builder
+            .defineField(ExecutionOrderTracked.STATE_MACHINE_FIELD, StateMachine.class,
+                    Visibility.PRIVATE, FieldPersistence.TRANSIENT, SyntheticState.SYNTHETIC)
+            .constructor(ElementMatchers.any()) // Interceptar constructores
+            .intercept(Advice.withCustomMapping()
+                .bind(ProtocolPattern.class, pattern(typeDescription))
+                .to(ConstructorAdvice.class))
+            .method(woven)
+            .intercept(methodAdvice)
+            // Declarado al final para que los accesores no reciban el advice de métodos
+            .implement(ExecutionOrderTracked.class)
+            .intercept(FieldAccessor.ofField(ExecutionOrderTracked.STATE_MACHINE_FIELD));
+    }
+
+    /**
+     * Clase de la jerarquía cuya anotación rige las instancias de {@code typeDescription}: la
+     * superclase tejida más alta, o la propia clase si no hereda de ninguna.
+     */
+    static TypeDescription protocolType(TypeDescription typeDescription) {
+        List<TypeDescription> superclasses = wovenSuperclasses(typeDescription);
+        return superclasses.isEmpty() ? typeDescription : superclasses.get(superclasses.size() - 1);
+    }
+
+    /**
+     * Superclases de la clase que tienen o tendrán el código del agente, de la más cercana a la más
+     * alta. Una superclase ya cargada se describe tal cual está, así que se sabe si se tejió; una
+     * descrita a partir de su fichero de clase, como hace el agente con las que aún no se han cargado,
+     * se tejerá si está anotada.
+     */
+    static List<TypeDescription> wovenSuperclasses(TypeDescription typeDescription) {
+        List<TypeDescription> superclasses = new ArrayList<>();
+        for (TypeDescription.Generic superclass = typeDescription.getSuperClass(); superclass != null;
+             superclass = superclass.getSuperClass()) {
+            TypeDescription type = superclass.asErasure();
+            boolean woven = type instanceof TypeDescription.ForLoadedType
+                    ? type.isAssignableTo(ExecutionOrderTracked.class)
+                    : type.getDeclaredAnnotations().isAnnotationPresent(ExecutionOrder.class);
+            if (woven) {
+                superclasses.add(type);
+            }
+        }
+        return superclasses;
+    }
+
+    /**
+     * Advice de los métodos de la clase según su {@link ExecutionOrder.Reentrancy} y el modo de
+     * comprobación de estado final.
+     */
+    static Class<?> adviceFor(TypeDescription typeDescription, ProtocolCompletion.Mode completion) {
+        if (countsOutermostOnly(typeDescription)) {
+            return MethodOrderAdvice.Outermost.class;
+        }
+        return completion == ProtocolCompletion.Mode.CLEANER ? MethodOrderAdvice.EnterOnly.class : MethodOrderAdvice.class;
+    }
+
+    static boolean countsOutermostOnly(TypeDescription typeDescription) {
+        AnnotationDescription executionOrder = typeDescription.getDeclaredAnnotations().ofType(ExecutionOrder.class);
+        String reentrancy = executionOrder.getValue("reentrancy").resolve(EnumerationDescription.class).getValue();
+        return ExecutionOrder.Reentrancy.OUTERMOST.name().equals(reentrancy);
+    }
+
+    /**
+     * Tabla de símbolos del patrón declarado en la clase. Si el patrón no compila, todos los
+     * métodos reciben {@link SymbolTable#UNKNOWN} y el error se notifica al construir la instancia.
+     */
+    static SymbolTable symbolsFor(TypeDescription typeDescription) {
+        return symbolsFor(typeDescription, null);
+    }
+
+    static SymbolTable symbolsFor(TypeDescription typeDescription, ClassLoader classLoader) {
+        String pattern = pattern(typeDescription);
+        try {
+            return ExecutionOrderAutomaton.forPattern(pattern, typeDescription.getName(), classLoader)
+                    .getTransitionTable().getSymbols();
+        } catch (IllegalArgumentException e) {
+            System.out.println("[ERROR] Invalid @ExecutionOrder pattern in " + typeDescription.getName() + ": " + e.getMessage());
+            return SymbolTable.of(java.util.Collections.emptyList());
+        }
+    }
+
+    /**
+     * Patrón declarado en la anotación {@link ExecutionOrder} de la clase.
+     */
+    static String pattern(TypeDescription typeDescription) {
+        return typeDescription.getDeclaredAnnotations().ofType(ExecutionOrder.class)
+                .getValue("value").resolve(String.class);
+    }
+
+    /**
+     * Si sólo se tejen los métodos que nombra el patrón (ver {@link ExecutionOrder.Weave}). Con
+     * {@link ExecutionOrder.Weave#PROTOCOL} y un patrón con comodines se tejen todos.
+     */
+    static boolean weavesProtocolOnly(TypeDescription typeDescription) {
+        AnnotationDescription executionOrder = typeDescription.getDeclaredAnnotations().ofType(ExecutionOrder.class);
+        String weave = executionOrder.getValue("weave").resolve(EnumerationDescription.class).getValue();
+        if (ExecutionOrder.Weave.ALL.name().equals(weave)) {
+            return false;
+        }
+        if (ExecutionOrder.Weave.PROTOCOL_WITH_WILDCARDS.name().equals(weave)) {
+            return true;
+        }
+        try {
+            if (PatternParser.parse(pattern(typeDescription)).acceptsUnknownCalls()) {
+                System.out.println("[WARNING] @ExecutionOrder pattern of " + typeDescription.getName()
+                        + " has a wildcard, weaving all methods (use weave = PROTOCOL_WITH_WILDCARDS to weave only the protocol)");
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            // El error se notifica al construir la instancia
+        }
+        return true;
+    }
+
+    /**
+     * Nombres de método del patrón.
+     */
+    static String[] protocolMethods(SymbolTable symbols) {
+        String[] names = new String[symbols.size() - 1];
+        for (int symbol = SymbolTable.UNKNOWN + 1; symbol < symbols.size(); symbol++) {
+            names[symbol - 1] = symbols.name(symbol);
+        }
+        return names;
+    }
+
+    /**
+     * Resuelve {@link TrackedStateMachine}: el campo si lo declara la clase instrumentada y si no, en
+     * una subclase anotada, el accesor heredado.
+     */
+    static final class StateMachineMapping implements Advice.OffsetMapping {
+        private static final MethodDescription.InDefinedShape GETTER = TypeDescription.ForLoadedType
+                .of(ExecutionOrderTracked.class).getDeclaredMethods()
+                .filter(ElementMatchers.named("getExecutionOrderStateMachine")).getOnly();
+
+        @Override
+        public Target resolve(TypeDescription instrumentedType, MethodDescription instrumentedMethod,
+                              Assigner assigner, Advice.ArgumentHandler argumentHandler, Sort sort) {
+            FieldList<FieldDescription.InDefinedShape> field = instrumentedType.getDeclaredFields()
+                    .filter(ElementMatchers.named(ExecutionOrderTracked.STATE_MACHINE_FIELD));
+            if (!field.isEmpty()) {
+                return new Target.ForField.ReadOnly(field.getOnly());
+            }
+            return new Target.ForStackManipulation(new StackManipulation.Compound(
+                    MethodVariableAccess.loadThis(), MethodInvocation.invoke(GETTER)));
+        }
+    }
+
+    /**
+     * Resuelve {@link MethodSymbol} con el símbolo del método instrumentado.
+     */
+    static final class MethodSymbolMapping implements Advice.OffsetMapping {
+        private final SymbolTable symbols;
+
+        MethodSymbolMapping(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        @Override
+        public Target resolve(TypeDescription instrumentedType, MethodDescription instrumentedMethod,
+                              Assigner assigner, Advice.ArgumentHandler argumentHandler, Sort sort) {
+            return Target.ForStackManipulation.of(symbols.lookup(instrumentedMethod.getInternalName()));
+        }
+    }
 }
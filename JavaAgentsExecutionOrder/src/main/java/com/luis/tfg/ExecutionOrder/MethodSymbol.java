@@ -0,0 +1,17 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Parámetro de advice que recibe el símbolo entero del método interceptado.
+ *
+ * <p>El {@link MethodOrderAgent} calcula el símbolo al transformar la clase y lo escribe como
+ * constante en el código tejido, de modo que en tiempo de ejecución no se maneja el nombre del método.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MethodSymbol {
+}
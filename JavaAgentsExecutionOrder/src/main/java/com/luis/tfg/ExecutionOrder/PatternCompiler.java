@@ -0,0 +1,938 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.*;
+
+/**
+ * Compila el árbol de un patrón a una {@link TransitionTable} determinista y mínima.
+ *
+ * <p>Pasos: construcción de Thompson del AFN (con un producto de autómatas para los {@code &}
+ * que no se pueden compilar como máscara, ver más abajo),
+ * construcción de subconjuntos y minimización por refinamiento de particiones. Al cuerpo del
+ * patrón se le añade siempre una llamada {@code FINAL} opcional que lleva a un estado sumidero,
+ * y las llamadas del bloque {@code [end:...]} se añaden como bucles en los estados de aceptación.</p>
+ *
+ * <p>El símbolo {@link SymbolTable#UNKNOWN} representa los métodos que no aparecen en el patrón,
+ * así que el comodín {@code .*} es simplemente una transición con todos los símbolos salvo FINAL.</p>
+ *
+ * <p>Las repeticiones pequeñas se expanden en copias del elemento. Las grandes de un único método
+ * ({@code x{n,m}} con más de {@link #EXPANSION_LIMIT} vueltas) se compilan como un contador: un
+ * estado con bucle cuyo número de vueltas lleva el cursor, de modo que el tamaño de la tabla no
+ * depende de n ni de m. Del mismo modo, un {@code &} cuyos operandos son métodos distintos
+ * ({@code a & b & c}) se compila como una máscara: un estado con un bucle por operando que marca su
+ * bit en el cursor y rechaza el método si ya estaba marcado, así que el número de estados no crece
+ * con el número de operandos.</p>
+ *
+ * <p>La cuenta o la máscara es el registro del cursor. Un estado del AFN con registro tiene hasta
+ * tres variantes según la clase del valor (por debajo de n, entre n y m, en m; para una máscara,
+ * incompleta o completa) y sólo una variante cuyo valor importa puede estar activa en cada estado
+ * del AFD. Si el patrón exigiría dos registros a la vez (por ejemplo {@code .* x{100}}, donde cada x
+ * puede empezar una cuenta nueva) se recompila expandiendo repeticiones y entrelazados.</p>
+ */
+final class PatternCompiler {
+
+    private static final int EPSILON = -1;
+    private static final int ANY = -2;
+
+    // Clase de cada estado del AFD antes de minimizar
+    private static final int NOT_ACCEPTING = 0;
+    private static final int ACCEPTING = 1;
+    private static final int FINAL_SINK = 2;
+
+    /** Repeticiones con más vueltas que esto se compilan como contador. */
+    static final int EXPANSION_LIMIT = 8;
+    /** Máximo de operandos de un & compilado como máscara (un bit por operando en un int). */
+    static final int MAX_MASK_OPERANDS = 30;
+    /** En modo AUTO, patrones con más estados del AFN que esto se compilan de forma perezosa. */
+    static final int LAZY_NFA_STATES = 1024;
+    /**
+     * Máximo de estados del AFN. Lo pueden alcanzar el producto de un {@code &}, cuyo tamaño es el
+     * producto del de sus operandos, y una repetición {@code x{n}} que no se puede compilar como
+     * contador (cuerpo de varias llamadas, alternativas o varios contadores a la vez), que se expande
+     * en n copias; un patrón que lo supera se rechaza al compilarlo.
+     */
+    static final int MAX_NFA_STATES = 1 << 16;
+    /**
+     * Máximo de estados del AFD completo. La construcción de subconjuntos puede crecer de forma
+     * exponencial con un AFN pequeño (por ejemplo {@code .*} delante de un {@code &}); al superarlo el
+     * patrón se compila de forma perezosa o, si tiene contadores o máscaras, se rechaza.
+     */
+    static final int MAX_DFA_STATES = 1 << 14;
+
+    // Clase del valor de un registro: para un contador x{n,m}, por debajo de n, entre n y m o en m;
+    // para una máscara, incompleta (BELOW) o completa (AT_MAX)
+    private static final int BELOW = 0;
+    private static final int BETWEEN = 1;
+    private static final int AT_MAX = 2;
+
+    private final SymbolTable symbols;
+    private final int finalSymbol;
+    private final boolean useRegisters;
+    private final List<Edges> nfa = new ArrayList<>();
+    private final List<Register> registers = new ArrayList<>();
+    // Cuerpo del patrón que se está compilando, para los mensajes de error
+    private PatternNode body;
+    // Mayor que cero mientras se construye el operando de un & o el elemento de una repetición expandida
+    private int registersBlocked;
+
+    private int nfaStart;
+    private int bodyAccept;
+    private int finalSink;
+    // null si el patrón no tiene bloque [end:...]
+    private List<String> postFinalCalls;
+
+    /**
+     * Numeración de los estados del AFD que va descubriendo {@link #expand}.
+     */
+    interface Subsets {
+        /**
+         * @param symbol método con el que se ha llegado al conjunto.
+         */
+        int indexOf(BitSet subset, int symbol);
+    }
+
+    /**
+     * Fila del AFD de un conjunto de estados del AFN: destino por símbolo, acción sobre el registro
+     * (con su argumento, el bit en MARK) y, si la acción es INCREMENT o MARK, destino cuando el
+     * registro llega al límite del estado.
+     */
+    static final class Expansion {
+        final int[] row;
+        final byte[] actions;
+        final int[] arguments;
+        final int[] cross;
+        final int limit;
+
+        Expansion(int[] row, byte[] actions, int[] arguments, int[] cross, int limit) {
+            this.row = row;
+            this.actions = actions;
+            this.arguments = arguments;
+            this.cross = cross;
+            this.limit = limit;
+        }
+    }
+
+    private PatternCompiler(SymbolTable symbols, boolean useRegisters) {
+        this.symbols = symbols;
+        this.finalSymbol = symbols.lookup(PatternParser.FINAL);
+        this.useRegisters = useRegisters;
+    }
+
+    static TransitionTable compile(PatternParser.ParsedPattern pattern) {
+        return compile(pattern, ExecutionOrderAutomaton.Compilation.EAGER, 0);
+    }
+
+    /**
+     * Compila el patrón a una tabla completa o, según {@code compilation}, a una
+     * {@link LazyTransitionTable} que guarda como mucho {@code lazyCacheSize} filas. Los patrones con
+     * contadores o máscaras se compilan siempre enteros: su tabla ya es pequeña.
+     */
+    static TransitionTable compile(PatternParser.ParsedPattern pattern, ExecutionOrderAutomaton.Compilation compilation,
+                                   int lazyCacheSize) {
+        SymbolTable symbols = SymbolTable.of(methodNames(pattern));
+        PatternCompiler compiler = new PatternCompiler(symbols, true);
+        compiler.buildNfa(pattern);
+        try {
+            return compiler.table(compilation, lazyCacheSize);
+        } catch (AmbiguousRegisterException e) {
+            System.out.println("[INFO] Pattern needs more than one counter or mask at a time, expanding it: " + pattern.body);
+            PatternCompiler expanded = new PatternCompiler(symbols, false);
+            expanded.buildNfa(pattern);
+            return expanded.table(compilation, lazyCacheSize);
+        }
+    }
+
+    private void buildNfa(PatternParser.ParsedPattern pattern) {
+        body = pattern.body;
+        int[] fragment = build(pattern.body);
+        nfaStart = fragment[0];
+        bodyAccept = fragment[1];
+        finalSink = newState();
+        nfa.get(bodyAccept).add(finalSymbol, finalSink);
+        postFinalCalls = pattern.postFinalCalls;
+    }
+
+    private TransitionTable table(ExecutionOrderAutomaton.Compilation compilation, int lazyCacheSize) {
+        boolean lazy = compilation == ExecutionOrderAutomaton.Compilation.LAZY
+                || (compilation == ExecutionOrderAutomaton.Compilation.AUTO && nfa.size() > LAZY_NFA_STATES);
+        if (lazy && registers.isEmpty()) {
+            return new LazyTransitionTable(this, lazyCacheSize);
+        }
+        TransitionTable table = determinize();
+        if (table != null) {
+            return table;
+        }
+        if (!registers.isEmpty()) {
+            throw new IllegalArgumentException("[ERROR] Pattern too large: needs more than " + MAX_DFA_STATES
+                    + " deterministic states in " + body);
+        }
+        System.out.println("[WARNING] Pattern needs more than " + MAX_DFA_STATES
+                + " deterministic states, compiling it lazily: " + body);
+        return new LazyTransitionTable(this, lazyCacheSize);
+    }
+
+    /**
+     * Métodos del patrón en orden de aparición, seguidos de los del bloque [end:...] y de FINAL.
+     */
+    private static List<String> methodNames(PatternParser.ParsedPattern pattern) {
+        Set<String> names = new LinkedHashSet<>();
+        collectMethodNames(pattern.body, names);
+        if (pattern.postFinalCalls != null) {
+            for (String call : pattern.postFinalCalls) {
+                if (!PatternParser.ANY_CALL.equals(call)) {
+                    names.add(call);
+                }
+            }
+        }
+        names.add(PatternParser.FINAL);
+        return new ArrayList<>(names);
+    }
+
+    private static void collectMethodNames(PatternNode node, Set<String> names) {
+        if (node instanceof PatternNode.Call) {
+            names.add(((PatternNode.Call) node).methodName);
+        }
+        for (PatternNode child : PatternParser.children(node)) {
+            collectMethodNames(child, names);
+        }
+    }
+
+    // ---------------------------------------------------------------- AFN de Thompson
+
+    private int newState() {
+        nfa.add(new Edges());
+        return nfa.size() - 1;
+    }
+
+    /**
+     * Construye el fragmento del nodo y devuelve {estado inicial, estado de aceptación}.
+     * Todos los estados de un fragmento se crean de forma contigua, lo que permite
+     * combinarlos después en el producto de {@code &}.
+     */
+    private int[] build(PatternNode node) {
+        if (node instanceof PatternNode.Call) {
+            int start = newState();
+            int accept = newState();
+            nfa.get(start).add(symbols.lookup(((PatternNode.Call) node).methodName), accept);
+            return new int[] {start, accept};
+        }
+        if (node instanceof PatternNode.Wildcard) {
+            int state = newState();
+            nfa.get(state).add(ANY, state);
+            return new int[] {state, state};
+        }
+        if (node instanceof PatternNode.Sequence) {
+            return buildSequence(((PatternNode.Sequence) node).elements);
+        }
+        if (node instanceof PatternNode.Repetition) {
+            return buildRepetition((PatternNode.Repetition) node);
+        }
+        if (node instanceof PatternNode.Alternation) {
+            int start = newState();
+            int accept = newState();
+            for (PatternNode alternative : ((PatternNode.Alternation) node).alternatives) {
+                int[] fragment = build(alternative);
+                nfa.get(start).add(EPSILON, fragment[0]);
+                nfa.get(fragment[1]).add(EPSILON, accept);
+            }
+            return new int[] {start, accept};
+        }
+        if (node instanceof PatternNode.Interleaving) {
+            List<PatternNode> operands = ((PatternNode.Interleaving) node).operands;
+            int[] bits = useRegisters && registersBlocked == 0 ? maskBits(operands) : null;
+            if (bits != null) {
+                return buildRegister(Register.mask(bits));
+            }
+            registersBlocked++;
+            try {
+                return buildInterleaving(operands);
+            } finally {
+                registersBlocked--;
+            }
+        }
+        throw new IllegalArgumentException("[ERROR] Invalid pattern element: " + node);
+    }
+
+    private int[] buildSequence(List<PatternNode> elements) {
+        if (elements.isEmpty()) {
+            int state = newState();
+            return new int[] {state, state};
+        }
+        int[] sequence = build(elements.get(0));
+        for (int i = 1; i < elements.size(); i++) {
+            sequence = concat(sequence, build(elements.get(i)));
+        }
+        return sequence;
+    }
+
+    /**
+     * Comprueba tras cada copia de una repetición expandida que el AFN sigue por debajo de
+     * {@link #MAX_NFA_STATES}, para rechazarla antes de llenar la memoria.
+     *
+     * @throws IllegalArgumentException si el AFN ya pasa de {@link #MAX_NFA_STATES} estados.
+     */
+    private void checkExpansion(PatternNode.Repetition repetition) {
+        if (nfa.size() > MAX_NFA_STATES) {
+            throw new IllegalArgumentException("[ERROR] Pattern too large: expanding " + repetition
+                    + " needs more than " + MAX_NFA_STATES + " automaton states in " + body);
+        }
+    }
+
+    private int[] concat(int[] first, int[] second) {
+        nfa.get(first[1]).add(EPSILON, second[0]);
+        return new int[] {first[0], second[1]};
+    }
+
+    private int[] buildRepetition(PatternNode.Repetition repetition) {
+        boolean unbounded = repetition.max == PatternNode.Repetition.UNBOUNDED;
+        boolean small = repetition.min <= EXPANSION_LIMIT && (unbounded || repetition.max <= EXPANSION_LIMIT);
+        if (!small && useRegisters && registersBlocked == 0 && repetition.element instanceof PatternNode.Call) {
+            int symbol = symbols.lookup(((PatternNode.Call) repetition.element).methodName);
+            return buildRegister(Register.counter(symbol, repetition.min, repetition.max));
+        }
+
+        // x{n,m} = n copias de x seguidas de m - n copias opcionales; x{n,} = n copias y x*
+        registersBlocked++;
+        try {
+            int[] sequence = null;
+            for (int i = 0; i < repetition.min; i++) {
+                int[] element = build(repetition.element);
+                sequence = sequence == null ? element : concat(sequence, element);
+                checkExpansion(repetition);
+            }
+            if (sequence == null) {
+                sequence = buildSequence(Collections.emptyList());
+            }
+            if (unbounded) {
+                int loop = newState();
+                int[] element = build(repetition.element);
+                nfa.get(loop).add(EPSILON, element[0]);
+                nfa.get(element[1]).add(EPSILON, loop);
+                return concat(sequence, new int[] {loop, loop});
+            }
+            for (int i = repetition.min; i < repetition.max; i++) {
+                int start = newState();
+                int[] element = build(repetition.element);
+                int accept = newState();
+                nfa.get(start).add(EPSILON, element[0]);
+                nfa.get(start).add(EPSILON, accept);
+                nfa.get(element[1]).add(EPSILON, accept);
+                sequence = concat(sequence, new int[] {start, accept});
+                checkExpansion(repetition);
+            }
+            return sequence;
+        } finally {
+            registersBlocked--;
+        }
+    }
+
+    /**
+     * Fragmento de un contador o una máscara: un estado por clase del valor. Las variantes que ya
+     * pueden terminar salen con épsilon; los bucles con los métodos del registro los resuelve
+     * {@link #determinize} porque el destino depende del valor, salvo en {@code x{n,}} una vez
+     * alcanzado n, que es un bucle normal.
+     */
+    private int[] buildRegister(Register register) {
+        registers.add(register);
+        int start = newState();
+        int accept = newState();
+        for (int countClass = BELOW; countClass <= AT_MAX; countClass++) {
+            if (!register.hasClass(countClass)) {
+                continue;
+            }
+            int variant = newState();
+            Edges edges = nfa.get(variant);
+            edges.register = register;
+            edges.countClass = countClass;
+            if (countClass != BELOW) {
+                edges.add(EPSILON, accept);
+            }
+            if (countClass == BETWEEN && register.max == PatternNode.Repetition.UNBOUNDED) {
+                edges.add(register.symbol, variant);
+            }
+            register.variants[countClass] = variant;
+        }
+        nfa.get(start).add(EPSILON, register.variants[register.classOf(0)]);
+        return new int[] {start, accept};
+    }
+
+    /**
+     * Bit de cada símbolo si todos los operandos son métodos distintos, o null.
+     */
+    private int[] maskBits(List<PatternNode> operands) {
+        if (operands.size() > MAX_MASK_OPERANDS) {
+            return null;
+        }
+        int[] bits = new int[symbols.size()];
+        for (int i = 0; i < operands.size(); i++) {
+            if (!(operands.get(i) instanceof PatternNode.Call)) {
+                return null;
+            }
+            int symbol = symbols.lookup(((PatternNode.Call) operands.get(i)).methodName);
+            if (bits[symbol] != 0) {
+                return null;
+            }
+            bits[symbol] = 1 << i;
+        }
+        return bits;
+    }
+
+    /**
+     * Entrelazado general: producto del primer operando (o de los N - 1 primeros, entrelazados)
+     * con el último.
+     */
+    private int[] buildInterleaving(List<PatternNode> operands) {
+        int last = operands.size() - 1;
+        PatternNode left = last == 1 ? operands.get(0) : new PatternNode.Interleaving(operands.subList(0, last));
+        return buildProduct(left, operands.get(last));
+    }
+
+    /**
+     * Producto de los fragmentos de ambos operandos: cada estado es un par (a, b) y cada
+     * llamada avanza uno de los dos, así que se aceptan todos los entrelazados.
+     *
+     * @throws IllegalArgumentException si el AFN pasaría de {@link #MAX_NFA_STATES} estados.
+     */
+    private int[] buildProduct(PatternNode left, PatternNode right) {
+        int leftFrom = nfa.size();
+        int[] leftFragment = build(left);
+        int rightFrom = nfa.size();
+        int[] rightFragment = build(right);
+        int rightTo = nfa.size();
+
+        int leftSize = rightFrom - leftFrom;
+        int rightSize = rightTo - rightFrom;
+        int base = nfa.size();
+        if (base + (long) leftSize * rightSize > MAX_NFA_STATES) {
+            throw new IllegalArgumentException("[ERROR] Pattern too large: interleaving " + left + " & " + right
+                    + " needs more than " + MAX_NFA_STATES + " automaton states in " + body);
+        }
+        for (int i = 0; i < leftSize * rightSize; i++) {
+            newState();
+        }
+
+        for (int a = leftFrom; a < rightFrom; a++) {
+            Edges edges = nfa.get(a);
+            for (int e = 0; e < edges.size; e++) {
+                for (int b = rightFrom; b < rightTo; b++) {
+                    int from = base + (a - leftFrom) * rightSize + (b - rightFrom);
+                    int to = base + (edges.targets[e] - leftFrom) * rightSize + (b - rightFrom);
+                    nfa.get(from).add(edges.labels[e], to);
+                }
+            }
+        }
+        for (int b = rightFrom; b < rightTo; b++) {
+            Edges edges = nfa.get(b);
+            for (int e = 0; e < edges.size; e++) {
+                for (int a = leftFrom; a < rightFrom; a++) {
+                    int from = base + (a - leftFrom) * rightSize + (b - rightFrom);
+                    int to = base + (a - leftFrom) * rightSize + (edges.targets[e] - rightFrom);
+                    nfa.get(from).add(edges.labels[e], to);
+                }
+            }
+        }
+
+        return new int[] {
+            base + (leftFragment[0] - leftFrom) * rightSize + (rightFragment[0] - rightFrom),
+            base + (leftFragment[1] - leftFrom) * rightSize + (rightFragment[1] - rightFrom)
+        };
+    }
+
+    // ---------------------------------------------------------------- AFD
+
+    /**
+     * Construcción de subconjuntos y minimización, o null si pasa de {@link #MAX_DFA_STATES} estados.
+     */
+    private TransitionTable determinize() {
+        List<BitSet> subsets = new ArrayList<>();
+        Map<BitSet, Integer> index = new HashMap<>();
+        List<Expansion> expansions = new ArrayList<>();
+
+        addSubset(initialSubset(), subsets, index);
+        for (int current = 0; current < subsets.size(); current++) {
+            expansions.add(expand(subsets.get(current), (subset, symbol) -> addSubset(subset, subsets, index)));
+            if (subsets.size() > MAX_DFA_STATES) {
+                return null;
+            }
+        }
+
+        int stateCount = subsets.size();
+        int[] kind = new int[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            kind[i] = kindOf(subsets.get(i));
+            addPostFinalCalls(expansions.get(i).row, i, kind[i]);
+        }
+        return minimize(expansions, kind);
+    }
+
+    BitSet initialSubset() {
+        return closure(singleton(nfaStart));
+    }
+
+    /**
+     * Calcula la fila del AFD del conjunto {@code subset}, numerando los destinos con {@code subsets}.
+     */
+    Expansion expand(BitSet subset, Subsets subsets) {
+        int symbolCount = symbols.size();
+        BitSet[] moves = new BitSet[symbolCount];
+        BitSet anyTargets = new BitSet();
+        for (int state = subset.nextSetBit(0); state >= 0; state = subset.nextSetBit(state + 1)) {
+            Edges edges = nfa.get(state);
+            for (int e = 0; e < edges.size; e++) {
+                int label = edges.labels[e];
+                if (label == ANY) {
+                    anyTargets.set(edges.targets[e]);
+                } else if (label != EPSILON) {
+                    if (moves[label] == null) {
+                        moves[label] = new BitSet();
+                    }
+                    moves[label].set(edges.targets[e]);
+                }
+            }
+        }
+
+        // Variante con registro activa en este estado, si la hay
+        int counted = registerVariant(subset);
+        Edges countedEdges = counted < 0 ? null : nfa.get(counted);
+        int limit = counted < 0 ? TransitionTable.NO_LIMIT : countedEdges.register.limit(countedEdges.countClass);
+
+        int[] row = new int[symbolCount];
+        byte[] actionRow = new byte[symbolCount];
+        int[] argumentRow = new int[symbolCount];
+        int[] crossRow = new int[symbolCount];
+        Arrays.fill(crossRow, TransitionTable.NO_TRANSITION);
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            BitSet moved = moves[symbol] == null ? new BitSet() : moves[symbol];
+            if (symbol != finalSymbol) {
+                moved.or(anyTargets);
+            }
+            boolean counting = countedEdges != null && countedEdges.register.loops(symbol);
+            if (moved.isEmpty() && !counting) {
+                row[symbol] = TransitionTable.NO_TRANSITION;
+                continue;
+            }
+            BitSet target = closure(moved);
+            if (!counting) {
+                row[symbol] = subsets.indexOf(target, symbol);
+                actionRow[symbol] = registerVariant(target) < 0 ? TransitionTable.KEEP : TransitionTable.RESET;
+                continue;
+            }
+
+            // Otra vuelta del contador u otro operando de la máscara: se sigue en la misma clase
+            // salvo al llegar al límite. Un operando repetido se rechaza, así que ningún otro
+            // camino del AFN puede avanzar con el mismo método.
+            Register register = countedEdges.register;
+            if (registerVariant(target) >= 0 || (register.bits != null && !moved.isEmpty())) {
+                throw new AmbiguousRegisterException();
+            }
+            int crossClass = register.crossClass(countedEdges.countClass);
+            row[symbol] = subsets.indexOf(closureWith(moved, counted), symbol);
+            crossRow[symbol] = subsets.indexOf(closureWith(moved, register.variants[crossClass]), symbol);
+            actionRow[symbol] = register.bits != null ? TransitionTable.MARK : TransitionTable.INCREMENT;
+            argumentRow[symbol] = register.bits != null ? register.bits[symbol] : 1;
+        }
+        return new Expansion(row, actionRow, argumentRow, crossRow, limit);
+    }
+
+    /**
+     * NOT_ACCEPTING, ACCEPTING o FINAL_SINK.
+     */
+    int kindOf(BitSet subset) {
+        if (subset.get(finalSink)) {
+            return FINAL_SINK;
+        }
+        return subset.get(bodyAccept) ? ACCEPTING : NOT_ACCEPTING;
+    }
+
+    /**
+     * Llamadas permitidas una vez terminado el patrón: bucles sobre el propio estado.
+     */
+    void addPostFinalCalls(int[] row, int state, int kind) {
+        if (postFinalCalls == null || kind != ACCEPTING) {
+            return;
+        }
+        boolean anyCall = postFinalCalls.contains(PatternParser.ANY_CALL);
+        for (int symbol = 0; symbol < row.length; symbol++) {
+            boolean allowed = anyCall ? symbol != finalSymbol : postFinalCalls.contains(symbols.name(symbol));
+            if (allowed && row[symbol] == TransitionTable.NO_TRANSITION) {
+                row[symbol] = state;
+            }
+        }
+    }
+
+    /**
+     * Motivo con el que rechaza llamadas un estado de la clase {@code kind} con la fila {@code row}.
+     */
+    byte rejectionKind(int kind, int[] row) {
+        if (kind == FINAL_SINK) {
+            return TransitionTable.FROM_FINAL;
+        }
+        if (kind == ACCEPTING && postFinalCalls != null) {
+            return TransitionTable.INVALID_SPECIAL;
+        }
+        if (kind == ACCEPTING) {
+            for (int symbol = 0; symbol < row.length; symbol++) {
+                if (row[symbol] != TransitionTable.NO_TRANSITION && symbol != finalSymbol) {
+                    return TransitionTable.INVALID_TRANSITION;
+                }
+            }
+            return TransitionTable.FROM_DECLARED_FINAL;
+        }
+        return TransitionTable.INVALID_TRANSITION;
+    }
+
+    static boolean isFinal(int kind) {
+        return kind != NOT_ACCEPTING;
+    }
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    private int addSubset(BitSet subset, List<BitSet> subsets, Map<BitSet, Integer> index) {
+        Integer existing = index.get(subset);
+        if (existing != null) {
+            return existing;
+        }
+        registerVariant(subset);
+        subsets.add(subset);
+        index.put(subset, subsets.size() - 1);
+        return subsets.size() - 1;
+    }
+
+    /**
+     * Variante de registro del conjunto cuyo valor importa (cuenta por debajo de n o entre n y m con
+     * m finito, máscara incompleta), o -1. Si hay más de una el cursor necesitaría varios registros.
+     */
+    private int registerVariant(BitSet subset) {
+        int counted = -1;
+        if (registers.isEmpty()) {
+            return counted;
+        }
+        for (int state = subset.nextSetBit(0); state >= 0; state = subset.nextSetBit(state + 1)) {
+            Edges edges = nfa.get(state);
+            if (edges.register != null && edges.register.limit(edges.countClass) != TransitionTable.NO_LIMIT) {
+                if (counted >= 0) {
+                    throw new AmbiguousRegisterException();
+                }
+                counted = state;
+            }
+        }
+        return counted;
+    }
+
+    private BitSet closureWith(BitSet states, int extra) {
+        BitSet with = (BitSet) states.clone();
+        with.set(extra);
+        return closure(with);
+    }
+
+    private BitSet closure(BitSet states) {
+        BitSet closure = (BitSet) states.clone();
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+            pending.push(state);
+        }
+        while (!pending.isEmpty()) {
+            Edges edges = nfa.get(pending.pop());
+            for (int e = 0; e < edges.size; e++) {
+                if (edges.labels[e] == EPSILON && !closure.get(edges.targets[e])) {
+                    closure.set(edges.targets[e]);
+                    pending.push(edges.targets[e]);
+                }
+            }
+        }
+        return closure;
+    }
+
+    private static BitSet singleton(int state) {
+        BitSet set = new BitSet();
+        set.set(state);
+        return set;
+    }
+
+    /**
+     * Refina la partición inicial (no aceptación, aceptación, FINAL) hasta que ningún bloque se
+     * divide, y numera los bloques en anchura desde el inicial para que la tabla sea estable.
+     */
+    private TransitionTable minimize(List<Expansion> expansions, int[] kind) {
+        int stateCount = expansions.size();
+        int symbolCount = symbols.size();
+
+        int[] block = kind.clone();
+        int blockCount = -1;
+        while (true) {
+            Map<Signature, Integer> blocks = new HashMap<>();
+            int[] refined = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                Expansion expansion = expansions.get(state);
+                int[] row = expansion.row;
+                byte[] actions = expansion.actions;
+                int[] arguments = expansion.arguments;
+                int[] cross = expansion.cross;
+                int[] signature = new int[2 + 5 * symbolCount];
+                int length = 0;
+                signature[length++] = block[state];
+                signature[length++] = expansion.limit;
+                for (int symbol = 0; symbol < symbolCount; symbol++) {
+                    if (row[symbol] != TransitionTable.NO_TRANSITION) {
+                        signature[length++] = symbol;
+                        signature[length++] = block[row[symbol]];
+                        signature[length++] = actions[symbol];
+                        if (cross[symbol] != TransitionTable.NO_TRANSITION) {
+                            signature[length++] = arguments[symbol];
+                            signature[length++] = block[cross[symbol]];
+                        }
+                    }
+                }
+                Signature key = new Signature(Arrays.copyOf(signature, length));
+                Integer existing = blocks.putIfAbsent(key, blocks.size());
+                refined[state] = existing != null ? existing : blocks.size() - 1;
+            }
+            block = refined;
+            if (blocks.size() == blockCount) {
+                break;
+            }
+            blockCount = blocks.size();
+        }
+
+        // Numeración en anchura desde el bloque inicial
+        int[] number = new int[blockCount];
+        Arrays.fill(number, -1);
+        int[] representative = new int[blockCount];
+        int numbered = 0;
+        Deque<Integer> pending = new ArrayDeque<>();
+        number[block[0]] = numbered++;
+        representative[0] = 0;
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int state = pending.poll();
+            int[] row = expansions.get(state).row;
+            int[] cross = expansions.get(state).cross;
+            for (int symbol = 0; symbol < 2 * symbolCount; symbol++) {
+                int target = symbol < symbolCount ? row[symbol] : cross[symbol - symbolCount];
+                if (target != TransitionTable.NO_TRANSITION && number[block[target]] < 0) {
+                    number[block[target]] = numbered;
+                    representative[numbered++] = target;
+                    pending.add(target);
+                }
+            }
+        }
+
+        int[] next = new int[numbered * symbolCount];
+        boolean[] finalStates = new boolean[numbered];
+        byte[] rejection = new byte[numbered];
+        byte[] actions = registers.isEmpty() ? null : new byte[numbered * symbolCount];
+        int[] arguments = registers.isEmpty() ? null : new int[numbered * symbolCount];
+        int[] crossNext = registers.isEmpty() ? null : new int[numbered * symbolCount];
+        int[] limits = registers.isEmpty() ? null : new int[numbered];
+        for (int state = 0; state < numbered; state++) {
+            int original = representative[state];
+            Expansion expansion = expansions.get(original);
+            int[] row = expansion.row;
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int target = row[symbol];
+                next[state * symbolCount + symbol] = target == TransitionTable.NO_TRANSITION
+                        ? TransitionTable.NO_TRANSITION : number[block[target]];
+                if (actions != null) {
+                    int cross = expansion.cross[symbol];
+                    actions[state * symbolCount + symbol] = expansion.actions[symbol];
+                    arguments[state * symbolCount + symbol] = expansion.arguments[symbol];
+                    crossNext[state * symbolCount + symbol] = cross == TransitionTable.NO_TRANSITION
+                            ? TransitionTable.NO_TRANSITION : number[block[cross]];
+                }
+            }
+            if (limits != null) {
+                limits[state] = expansion.limit;
+            }
+            finalStates[state] = isFinal(kind[original]);
+            rejection[state] = rejectionKind(kind[original], row);
+        }
+
+        return new TransitionTable(symbols, next, finalStates, rejection, actions, arguments, crossNext, limits,
+                graphView(next, crossNext, finalStates, numbered));
+    }
+
+    /**
+     * Estados con nombre para depuración y para {@link StateMachine#getCurrentState()}. Cada estado
+     * se nombra por los métodos con los que se llega a él (sin contar bucles); si se llega con un
+     * método desconocido es un comodín ({@code .*}). Los nombres repetidos se numeran.
+     */
+    private State[] graphView(int[] next, int[] crossNext, boolean[] finalStates, int stateCount) {
+        int symbolCount = symbols.size();
+        List<Set<Integer>> incoming = new ArrayList<>();
+        for (int state = 0; state < stateCount; state++) {
+            incoming.add(new TreeSet<>());
+        }
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int target = next[state * symbolCount + symbol];
+                if (target != TransitionTable.NO_TRANSITION && target != state) {
+                    incoming.get(target).add(symbol);
+                }
+                int cross = crossNext == null ? TransitionTable.NO_TRANSITION : crossNext[state * symbolCount + symbol];
+                if (cross != TransitionTable.NO_TRANSITION && cross != state) {
+                    incoming.get(cross).add(symbol);
+                }
+            }
+        }
+
+        String[] ids = new String[stateCount];
+        String[] names = new String[stateCount];
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (int state = 0; state < stateCount; state++) {
+            String name = stateName(state, incoming.get(state));
+            int occurrence = occurrences.merge(name, 1, Integer::sum);
+            names[state] = name;
+            ids[state] = occurrence == 1 ? name : name + "_" + occurrence;
+        }
+        return TransitionTable.graph(ids, names, finalStates, next, crossNext, symbolCount);
+    }
+
+    private String stateName(int state, Set<Integer> incoming) {
+        if (state == TransitionTable.INITIAL_STATE) {
+            return "INITIAL";
+        }
+        if (incoming.contains(SymbolTable.UNKNOWN)) {
+            return ".*";
+        }
+        StringJoiner name = new StringJoiner("|");
+        for (int symbol : incoming) {
+            name.add(symbols.name(symbol));
+        }
+        return name.toString();
+    }
+
+    /**
+     * Transiciones salientes de un estado del AFN.
+     */
+    private static final class Edges {
+        int[] labels = new int[2];
+        int[] targets = new int[2];
+        int size;
+        // Sólo en los estados de un registro: el registro y la clase del valor que representan
+        Register register;
+        int countClass;
+
+        void add(int label, int target) {
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            labels[size] = label;
+            targets[size] = target;
+            size++;
+        }
+    }
+
+    /**
+     * Registro del cursor: la cuenta de una repetición {@code x{min,max}} de un único método, o la
+     * máscara de operandos ya llamados de un {@code &} de métodos distintos.
+     */
+    private static final class Register {
+        final int symbol;
+        final int min;
+        final int max;
+        // Sólo en máscaras: bit de cada símbolo, 0 si no es operando
+        final int[] bits;
+        final int[] variants = {-1, -1, -1};
+
+        private Register(int symbol, int min, int max, int[] bits) {
+            this.symbol = symbol;
+            this.min = min;
+            this.max = max;
+            this.bits = bits;
+        }
+
+        static Register counter(int symbol, int min, int max) {
+            return new Register(symbol, min, max, null);
+        }
+
+        /**
+         * Una máscara se comporta como un contador {@code x{1}}: incompleta hasta que el valor llega
+         * al límite, que es la máscara completa.
+         */
+        static Register mask(int[] bits) {
+            return new Register(-1, 1, 1, bits);
+        }
+
+        boolean loops(int symbol) {
+            return bits != null ? bits[symbol] != 0 : symbol == this.symbol;
+        }
+
+        boolean hasClass(int countClass) {
+            switch (countClass) {
+                case BELOW:
+                    return min > 0;
+                case BETWEEN:
+                    return max == PatternNode.Repetition.UNBOUNDED || max > min;
+                default:
+                    return max != PatternNode.Repetition.UNBOUNDED;
+            }
+        }
+
+        int classOf(int count) {
+            if (count < min) {
+                return BELOW;
+            }
+            return max == PatternNode.Repetition.UNBOUNDED || count < max ? BETWEEN : AT_MAX;
+        }
+
+        /**
+         * Cuenta con la que se sale de la clase, o NO_LIMIT si en esa clase la cuenta no importa.
+         * La cuenta vuelve a cero al cambiar de clase, así que entre n y m se cuenta hasta m - n.
+         */
+        int limit(int countClass) {
+            if (countClass == BELOW) {
+                return bits != null ? fullMask() : min;
+            }
+            if (countClass == BETWEEN && max != PatternNode.Repetition.UNBOUNDED) {
+                return max - min;
+            }
+            return TransitionTable.NO_LIMIT;
+        }
+
+        int crossClass(int countClass) {
+            return countClass == BELOW ? classOf(min) : AT_MAX;
+        }
+
+        private int fullMask() {
+            int full = 0;
+            for (int bit : bits) {
+                full |= bit;
+            }
+            return full;
+        }
+    }
+
+    /**
+     * El patrón necesitaría más de un registro a la vez; se recompila expandiendo repeticiones y
+     * entrelazados.
+     */
+    private static final class AmbiguousRegisterException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        AmbiguousRegisterException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Signature {
+        private final int[] values;
+        private final int hash;
+
+        Signature(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Signature && Arrays.equals(values, ((Signature) other).values);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Árbol sintáctico de un patrón de {@link ExecutionOrder}, tal como lo produce {@link PatternParser}.
+ */
+abstract class PatternNode {
+
+    /**
+     * Llamada a un método concreto.
+     */
+    static final class Call extends PatternNode {
+        final String methodName;
+
+        Call(String methodName) {
+            this.methodName = methodName;
+        }
+
+        @Override
+        public String toString() {
+            return methodName;
+        }
+    }
+
+    /**
+     * Comodín {@code .*}: cualquier número de llamadas a cualquier método.
+     */
+    static final class Wildcard extends PatternNode {
+        @Override
+        public String toString() {
+            return ".*";
+        }
+    }
+
+    /**
+     * Elementos que se deben llamar uno detrás de otro. Una secuencia vacía no consume llamadas.
+     */
+    static final class Sequence extends PatternNode {
+        final List<PatternNode> elements;
+
+        Sequence(List<PatternNode> elements) {
+            this.elements = Collections.unmodifiableList(elements);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + join(elements, " ") + ")";
+        }
+    }
+
+    /**
+     * Una de las alternativas ({@code a | b}).
+     */
+    static final class Alternation extends PatternNode {
+        final List<PatternNode> alternatives;
+
+        Alternation(List<PatternNode> alternatives) {
+            this.alternatives = Collections.unmodifiableList(alternatives);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + join(alternatives, " | ") + ")";
+        }
+    }
+
+    /**
+     * Todos los operandos, en cualquier orden y entrelazados ({@code a & b}).
+     */
+    static final class Interleaving extends PatternNode {
+        final List<PatternNode> operands;
+
+        Interleaving(List<PatternNode> operands) {
+            this.operands = Collections.unmodifiableList(operands);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + join(operands, " & ") + ")";
+        }
+    }
+
+    /**
+     * El elemento repetido entre {@code min} y {@code max} veces: {@code x{n}}, {@code x{n,m}}
+     * o {@code x{n,}}, este último con {@code max} igual a {@link #UNBOUNDED}.
+     */
+    static final class Repetition extends PatternNode {
+        static final int UNBOUNDED = -1;
+
+        final PatternNode element;
+        final int min;
+        final int max;
+
+        Repetition(PatternNode element, int min, int max) {
+            this.element = element;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            if (min == max) {
+                return element + "{" + min + "}";
+            }
+            return element + "{" + min + "," + (max == UNBOUNDED ? "" : String.valueOf(max)) + "}";
+        }
+    }
+
+    private static String join(List<PatternNode> nodes, String separator) {
+        StringBuilder text = new StringBuilder();
+        for (PatternNode node : nodes) {
+            if (text.length() > 0) {
+                text.append(separator);
+            }
+            text.append(node);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,305 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Analizador descendente recursivo de los patrones de {@link ExecutionOrder}.
+ *
+ * <p>Gramática, de menor a mayor precedencia:</p>
+ * <pre>
+ * patrón      := flecha ('[' 'end:' llamadas ']')?
+ * flecha      := alternativa ('-&gt;' alternativa)*
+ * alternativa := entrelazado ('|' entrelazado)*
+ * entrelazado := secuencia ('&amp;' secuencia)*
+ * secuencia   := repetición+
+ * repetición  := átomo ('{' n (',' m?)? '}')?
+ * átomo       := método | '.*' | '(' flecha ')'
+ * </pre>
+ *
+ * <p>{@code ->} y la yuxtaposición son ambas secuencia, pero {@code ->} separa los operandos de
+ * {@code |} y {@code &}: {@code a | b -> c} es {@code (a | b) c}, mientras que {@code a | b c}
+ * es {@code a | (b c)}. {@code FINAL} sólo puede aparecer como último elemento y se elimina del
+ * árbol, porque el compilador añade siempre una llamada FINAL opcional al final del patrón.</p>
+ */
+final class PatternParser {
+
+    static final String FINAL = "FINAL";
+    /** En el bloque {@code [end:+]}, cualquier llamada. */
+    static final String ANY_CALL = "+";
+
+    /**
+     * Resultado del análisis: el cuerpo del patrón y las llamadas permitidas tras terminarlo.
+     */
+    static final class ParsedPattern {
+        final PatternNode body;
+        // null si el patrón no tiene bloque [end:...]
+        final List<String> postFinalCalls;
+
+        ParsedPattern(PatternNode body, List<String> postFinalCalls) {
+            this.body = body;
+            this.postFinalCalls = postFinalCalls;
+        }
+
+        /**
+         * Si una llamada a un método que el patrón no nombra puede ser válida: hay un comodín o un
+         * bloque {@code [end:+]}.
+         */
+        boolean acceptsUnknownCalls() {
+            return (postFinalCalls != null && postFinalCalls.contains(ANY_CALL)) || containsWildcard(body);
+        }
+
+        private static boolean containsWildcard(PatternNode node) {
+            if (node instanceof PatternNode.Wildcard) {
+                return true;
+            }
+            for (PatternNode child : children(node)) {
+                if (containsWildcard(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final String regex;
+    private final String text;
+    private int position;
+
+    private PatternParser(String regex, String text) {
+        this.regex = regex;
+        this.text = text;
+    }
+
+    /**
+     * @throws IllegalArgumentException si el patrón no es válido.
+     */
+    static ParsedPattern parse(String regex) {
+        if (regex == null || regex.trim().isEmpty()) {
+            throw invalidFormat(regex);
+        }
+
+        // Separar la parte principal del bloque de transiciones especiales
+        int specialStart = regex.indexOf('[');
+        String mainRegex = specialStart < 0 ? regex : regex.substring(0, specialStart);
+        List<String> postFinalCalls = specialStart < 0 ? null : parseSpecialTransitions(regex.substring(specialStart));
+
+        PatternParser parser = new PatternParser(regex, mainRegex);
+        PatternNode body = parser.parseArrow();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw parser.invalid("Invalid token '" + parser.text.charAt(parser.position) + "'");
+        }
+
+        body = withoutTrailingFinal(body);
+        if (mentionsFinal(body)) {
+            throw new IllegalArgumentException("[ERROR] Invalid use of FINAL, it can only close the pattern: " + regex);
+        }
+        return new ParsedPattern(body, postFinalCalls);
+    }
+
+    private static List<String> parseSpecialTransitions(String block) {
+        String content = block.trim();
+        if (!content.endsWith("]") || content.indexOf('[', 1) >= 0) {
+            throw new IllegalArgumentException("[ERROR] Invalid syntax for special transitions: " + block);
+        }
+        content = content.substring(1, content.length() - 1).trim();
+        if (!content.startsWith("end:")) {
+            throw new IllegalArgumentException("[ERROR] Invalid syntax for special transitions: " + content);
+        }
+
+        List<String> calls = new ArrayList<>();
+        for (String call : content.substring("end:".length()).split(",")) {
+            String method = call.trim();
+            if (!method.equals(ANY_CALL) && !isMethodName(method)) {
+                throw new IllegalArgumentException("[ERROR] Invalid syntax for special transitions: " + content);
+            }
+            calls.add(method);
+        }
+        return Collections.unmodifiableList(calls);
+    }
+
+    private PatternNode parseArrow() {
+        List<PatternNode> elements = new ArrayList<>();
+        elements.add(parseAlternation());
+        while (consume("->")) {
+            elements.add(parseAlternation());
+        }
+        return sequenceOf(elements);
+    }
+
+    private PatternNode parseAlternation() {
+        List<PatternNode> alternatives = new ArrayList<>();
+        alternatives.add(parseInterleaving("sequence"));
+        while (consume("|")) {
+            alternatives.add(parseInterleaving("OR"));
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new PatternNode.Alternation(alternatives);
+    }
+
+    private PatternNode parseInterleaving(String context) {
+        List<PatternNode> operands = new ArrayList<>();
+        operands.add(parseSequence(context));
+        while (consume("&")) {
+            operands.add(parseSequence("AND"));
+        }
+        return operands.size() == 1 ? operands.get(0) : new PatternNode.Interleaving(operands);
+    }
+
+    private PatternNode parseSequence(String context) {
+        List<PatternNode> elements = new ArrayList<>();
+        while (startsAtom()) {
+            elements.add(parseRepetition());
+        }
+        if (elements.isEmpty()) {
+            throw invalid("Invalid " + context + " syntax, missing operand");
+        }
+        return sequenceOf(elements);
+    }
+
+    private PatternNode parseRepetition() {
+        PatternNode atom = parseAtom();
+        skipWhitespace();
+        if (position < text.length() && text.charAt(position) == '{') {
+            int close = text.indexOf('}', position);
+            String bounds = close < 0 ? "" : text.substring(position + 1, close).replace(" ", "");
+            if (!bounds.matches("\\d{1,9}(,(\\d{1,9})?)?")) {
+                throw invalid("Invalid repetition syntax");
+            }
+            int comma = bounds.indexOf(',');
+            int min = Integer.parseInt(comma < 0 ? bounds : bounds.substring(0, comma));
+            int max;
+            if (comma < 0) {
+                max = min;
+            } else if (comma == bounds.length() - 1) {
+                max = PatternNode.Repetition.UNBOUNDED;
+            } else {
+                max = Integer.parseInt(bounds.substring(comma + 1));
+            }
+            if (max != PatternNode.Repetition.UNBOUNDED && max < min) {
+                throw invalid("Invalid repetition syntax, upper bound below lower bound");
+            }
+            position = close + 1;
+            return new PatternNode.Repetition(atom, min, max);
+        }
+        return atom;
+    }
+
+    private PatternNode parseAtom() {
+        skipWhitespace();
+        if (consume("(")) {
+            PatternNode group = parseArrow();
+            if (!consume(")")) {
+                throw invalid("Invalid group, missing ')'");
+            }
+            return group;
+        }
+        if (consume(".*")) {
+            return new PatternNode.Wildcard();
+        }
+        int start = position;
+        while (position < text.length() && Character.isJavaIdentifierPart(text.charAt(position))) {
+            position++;
+        }
+        return new PatternNode.Call(text.substring(start, position));
+    }
+
+    private boolean startsAtom() {
+        skipWhitespace();
+        if (atEnd()) {
+            return false;
+        }
+        char next = text.charAt(position);
+        return next == '(' || text.startsWith(".*", position) || Character.isJavaIdentifierStart(next);
+    }
+
+    private boolean consume(String token) {
+        skipWhitespace();
+        if (text.startsWith(token, position)) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean atEnd() {
+        return position >= text.length();
+    }
+
+    private IllegalArgumentException invalid(String reason) {
+        return new IllegalArgumentException("[ERROR] " + reason + " at position " + position + " in: " + regex);
+    }
+
+    private static IllegalArgumentException invalidFormat(String regex) {
+        return new IllegalArgumentException(
+                "[ERROR] Invalid regex format. Expected 'sequence -> target' or 'sequence'. Got: " + regex);
+    }
+
+    private static PatternNode sequenceOf(List<PatternNode> elements) {
+        return elements.size() == 1 ? elements.get(0) : new PatternNode.Sequence(elements);
+    }
+
+    static boolean isMethodName(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Quita un FINAL explícito al final del patrón; el compilador lo añade siempre como opcional.
+     */
+    private static PatternNode withoutTrailingFinal(PatternNode node) {
+        if (node instanceof PatternNode.Call && FINAL.equals(((PatternNode.Call) node).methodName)) {
+            return new PatternNode.Sequence(Collections.emptyList());
+        }
+        if (node instanceof PatternNode.Sequence) {
+            List<PatternNode> elements = new ArrayList<>(((PatternNode.Sequence) node).elements);
+            if (!elements.isEmpty()) {
+                elements.set(elements.size() - 1, withoutTrailingFinal(elements.get(elements.size() - 1)));
+            }
+            return new PatternNode.Sequence(elements);
+        }
+        return node;
+    }
+
+    private static boolean mentionsFinal(PatternNode node) {
+        if (node instanceof PatternNode.Call) {
+            return FINAL.equals(((PatternNode.Call) node).methodName);
+        }
+        for (PatternNode child : children(node)) {
+            if (mentionsFinal(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static List<PatternNode> children(PatternNode node) {
+        if (node instanceof PatternNode.Sequence) {
+            return ((PatternNode.Sequence) node).elements;
+        }
+        if (node instanceof PatternNode.Alternation) {
+            return ((PatternNode.Alternation) node).alternatives;
+        }
+        if (node instanceof PatternNode.Interleaving) {
+            return ((PatternNode.Interleaving) node).operands;
+        }
+        if (node instanceof PatternNode.Repetition) {
+            return Collections.singletonList(((PatternNode.Repetition) node).element);
+        }
+        return Collections.emptyList();
+    }
+}
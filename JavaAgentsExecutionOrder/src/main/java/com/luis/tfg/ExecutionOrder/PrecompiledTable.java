@@ -0,0 +1,88 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Tablas de transiciones generadas al compilar el código por {@link ExecutionOrderProcessor}.
+ *
+ * <p>Por cada clase {@code paquete.Clase} anotada con {@link ExecutionOrder} el procesador genera
+ * {@code paquete.Clase_ExecutionOrderTable} (las clases anidadas cambian {@code $} por {@code _}) con
+ * dos constantes públicas: {@code PATTERN}, el patrón del que sale la tabla, y {@code TABLE}, la tabla
+ * escrita con {@link TransitionTable#writeTo} y codificada en Base64, partida en trozos para no
+ * superar el límite de tamaño de las constantes de una clase.</p>
+ */
+final class PrecompiledTable {
+
+    static final String SUFFIX = "_ExecutionOrderTable";
+    static final String PATTERN_FIELD = "PATTERN";
+    static final String TABLE_FIELD = "TABLE";
+    // Caracteres de cada trozo, por debajo de los 65535 bytes de una constante String
+    static final int CHUNK_LENGTH = 16384;
+
+    private PrecompiledTable() {
+    }
+
+    /**
+     * Nombre de la clase generada para la clase anotada {@code binaryName}.
+     */
+    static String className(String binaryName) {
+        int packageEnd = binaryName.lastIndexOf('.') + 1;
+        return binaryName.substring(0, packageEnd) + binaryName.substring(packageEnd).replace('$', '_') + SUFFIX;
+    }
+
+    /**
+     * Tabla escrita y partida en trozos, tal como la guarda la constante {@code TABLE}.
+     */
+    static String[] encode(TransitionTable table) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            table.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize transition table", e);
+        }
+        String encoded = Base64.getEncoder().encodeToString(bytes.toByteArray());
+        List<String> chunks = new ArrayList<>();
+        for (int start = 0; start < encoded.length(); start += CHUNK_LENGTH) {
+            chunks.add(encoded.substring(start, Math.min(encoded.length(), start + CHUNK_LENGTH)));
+        }
+        return chunks.toArray(new String[0]);
+    }
+
+    static TransitionTable decode(String[] chunks) throws IOException {
+        byte[] bytes = Base64.getDecoder().decode(String.join("", chunks));
+        return TransitionTable.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Carga la tabla generada para la clase anotada, o devuelve null si no existe, se generó para otro
+     * patrón (el código se ha compilado sin volver a pasar el procesador) o es de otra versión del formato.
+     */
+    static TransitionTable load(String binaryName, ClassLoader loader, String regex) {
+        if (binaryName == null || loader == null) {
+            return null;
+        }
+        Class<?> generated;
+        try {
+            generated = Class.forName(className(binaryName), true, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+        try {
+            if (!regex.equals(generated.getField(PATTERN_FIELD).get(null))) {
+                System.out.println("[WARNING] Precompiled ExecutionOrder table is stale for " + binaryName + ", compiling pattern");
+                return null;
+            }
+            return decode((String[]) generated.getField(TABLE_FIELD).get(null));
+        } catch (ReflectiveOperationException | ClassCastException | IllegalArgumentException | IOException e) {
+            System.out.println("[WARNING] Cannot load precompiled ExecutionOrder table for " + binaryName + ": " + e);
+            return null;
+        }
+    }
+}
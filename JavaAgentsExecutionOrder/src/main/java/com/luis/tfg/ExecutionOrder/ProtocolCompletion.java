@@ -0,0 +1,127 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Comprobación de que una instancia ha terminado su protocolo.
+ *
+ * <p>Con {@link Mode#EXIT}, el modo por defecto, el advice de salida de cada método tejido mira si la
+ * StateMachine está en un estado final e informa de ello (sólo con {@code -Dexecutionorder.debug=true},
+ * porque escribe en cada llamada). Con {@link Mode#CLEANER} ({@code -Dexecutionorder.completion=cleaner})
+ * los métodos sólo llevan el advice de entrada y la comprobación se hace una única vez, cuando se
+ * abandona la instancia: al llamar a {@link #complete(Object)} o, si nadie lo hace, cuando el
+ * recolector la descarta. En ese caso la comprobación se ejecuta en el hilo del {@link Cleaner},
+ * fuera del código de la aplicación.</p>
+ */
+public final class ProtocolCompletion {
+
+    /**
+     * Cuándo se comprueba que el protocolo ha terminado.
+     */
+    public enum Mode {
+        /** Tras cada método tejido. */
+        EXIT,
+        /** Una vez, al cerrar o abandonar la instancia. */
+        CLEANER
+    }
+
+    private static final Mode mode = Mode.valueOf(
+            System.getProperty("executionorder.completion", "exit").toUpperCase());
+    private static final Cleaner cleaner = Cleaner.create();
+    private static final AtomicLong incompleteCount = new AtomicLong();
+    // Marca de una StateMachine que ya se ha contado como liberada sin comprobación pendiente
+    private static final Cleaner.Cleanable RELEASED = () -> {
+    };
+
+    private ProtocolCompletion() {
+    }
+
+    public static Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Programa la comprobación de la instancia para cuando se abandone. La acción sólo guarda la
+     * StateMachine y una descripción de la instancia, nunca la instancia.
+     */
+    static void track(Object instance, StateMachine stateMachine) {
+        stateMachine.completionCheck = cleaner.register(instance, new Check(stateMachine, instance.getClass().getName(),
+                Integer.toHexString(System.identityHashCode(instance))));
+    }
+
+    /**
+     * Gancho de cierre explícito: comprueba ahora el protocolo de la instancia y cancela la
+     * comprobación pendiente, de forma que no se vuelve a informar cuando se recoja.
+     *
+     * @return si la instancia está en un estado final. Una instancia sin StateMachine cuenta como
+     *         terminada: el registro libera las que llegan a un estado terminal (ver
+     *         {@link ExecutionOrderRegistry}).
+     */
+    public static boolean complete(Object instance) {
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
+        if (stateMachine == null) {
+            return true;
+        }
+        boolean completed = stateMachine.isInFinalState();
+        Cleaner.Cleanable completionCheck;
+        synchronized (stateMachine) {
+            // Sin modo CLEANER no hay comprobación pendiente; se crea para cerrarla una única vez
+            if (stateMachine.completionCheck == null) {
+                track(instance, stateMachine);
+            }
+            completionCheck = stateMachine.completionCheck;
+        }
+        completionCheck.clean();
+        return completed;
+    }
+
+    /**
+     * La instancia ha llegado a un estado terminal y el registro la libera: la comprobación
+     * pendiente se ejecuta ya (y la cuenta como completada) y no se repite al cerrarla ni al recogerla.
+     */
+    static void released(StateMachine stateMachine, String className) {
+        Cleaner.Cleanable completionCheck;
+        synchronized (stateMachine) {
+            completionCheck = stateMachine.completionCheck;
+            if (completionCheck == null) {
+                stateMachine.completionCheck = RELEASED;
+            }
+        }
+        if (completionCheck != null) {
+            completionCheck.clean();
+        } else {
+            ExecutionOrderStats.instanceReleased(className, stateMachine.isInFinalState());
+        }
+    }
+
+    /**
+     * Instancias que se han cerrado o recogido sin terminar su protocolo.
+     */
+    public static long incompleteCount() {
+        return incompleteCount.get();
+    }
+
+    private static final class Check implements Runnable {
+        private final StateMachine stateMachine;
+        private final String className;
+        private final String identity;
+
+        Check(StateMachine stateMachine, String className, String identity) {
+            this.stateMachine = stateMachine;
+            this.className = className;
+            this.identity = identity;
+        }
+
+        @Override
+        public void run() {
+            boolean completed = stateMachine.isInFinalState();
+            ExecutionOrderStats.instanceReleased(className, completed);
+            if (!completed) {
+                incompleteCount.incrementAndGet();
+                System.out.println("[ERROR] Instance abandoned before completing its protocol: " + className + "@"
+                        + identity + ". Current state: " + stateMachine.getCurrentState().getId());
+            }
+        }
+    }
+}
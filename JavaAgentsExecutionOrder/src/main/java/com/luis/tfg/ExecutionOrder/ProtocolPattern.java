@@ -0,0 +1,18 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Parámetro de advice que recibe el patrón de {@link ExecutionOrder} de la clase instrumentada.
+ *
+ * <p>El {@link MethodOrderAgent} lee la anotación al transformar la clase y escribe el patrón como
+ * constante en el constructor tejido, de modo que crear una instancia no consulta la anotación por
+ * reflexión.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface ProtocolPattern {
+}
@@ -0,0 +1,102 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.Arrays;
+
+/**
+ * Profundidad de las llamadas en curso de cada hilo, para
+ * {@link ExecutionOrder.Reentrancy#OUTERMOST}.
+ *
+ * <p>Cada hilo guarda las StateMachine de las instancias en las que está dentro de un método tejido
+ * y cuántas llamadas anidadas lleva en cada una. Sólo la llamada que abre una instancia avanza su
+ * cursor; las que llegan mientras sigue abierta sólo incrementan el contador. Las llamadas anidadas
+ * suelen afectar a pocas instancias a la vez, así que se buscan recorriendo un array corto. Es
+ * pública porque el advice tejido en las clases de la aplicación la llama directamente.</p>
+ */
+public final class ReentrancyGuard {
+
+    private static final ThreadLocal<ReentrancyGuard> current = ThreadLocal.withInitial(ReentrancyGuard::new);
+
+    private StateMachine[] stateMachines = new StateMachine[4];
+    private int[] depths = new int[4];
+    private int size;
+
+    private ReentrancyGuard() {
+    }
+
+    /**
+     * Entrada en un método tejido. Si ya hay una llamada en curso sobre la instancia en este hilo
+     * sólo aumenta la profundidad; si no, la abre y valida la llamada con
+     * {@link StateMachine#tryTransition(int)}.
+     *
+     * @return false si la llamada más externa no está permitida. La llamada queda abierta igualmente,
+     *         así que quien la rechace tiene que cerrarla con {@link #exit(StateMachine)}.
+     */
+    public static boolean enter(StateMachine stateMachine, int symbol) {
+        ReentrancyGuard guard = current.get();
+        int index = guard.indexOf(stateMachine);
+        if (index >= 0) {
+            guard.depths[index]++;
+            return true;
+        }
+        guard.push(stateMachine);
+        return stateMachine.tryTransition(symbol);
+    }
+
+    /**
+     * Salida de un método tejido.
+     *
+     * @return si era la llamada más externa sobre la instancia.
+     */
+    public static boolean exit(StateMachine stateMachine) {
+        if (stateMachine == null) {
+            return false;
+        }
+        ReentrancyGuard guard = current.get();
+        int index = guard.indexOf(stateMachine);
+        if (index < 0) {
+            return false;
+        }
+        if (--guard.depths[index] > 0) {
+            return false;
+        }
+        guard.remove(index);
+        return true;
+    }
+
+    /**
+     * Profundidad de las llamadas en curso sobre la instancia en este hilo; 0 si no hay ninguna.
+     */
+    static int depth(StateMachine stateMachine) {
+        ReentrancyGuard guard = current.get();
+        int index = guard.indexOf(stateMachine);
+        return index >= 0 ? guard.depths[index] : 0;
+    }
+
+    private int indexOf(StateMachine stateMachine) {
+        // Desde el final: la instancia más reciente es la más probable
+        for (int i = size - 1; i >= 0; i--) {
+            if (stateMachines[i] == stateMachine) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void push(StateMachine stateMachine) {
+        if (size == stateMachines.length) {
+            stateMachines = Arrays.copyOf(stateMachines, size * 2);
+            depths = Arrays.copyOf(depths, size * 2);
+        }
+        stateMachines[size] = stateMachine;
+        depths[size] = 1;
+        size++;
+    }
+
+    private void remove(int index) {
+        size--;
+        System.arraycopy(stateMachines, index + 1, stateMachines, index, size - index);
+        System.arraycopy(depths, index + 1, depths, index, size - index);
+        // No retener la StateMachine cuando el hilo ya no está dentro de la instancia
+        stateMachines[size] = null;
+    }
+}
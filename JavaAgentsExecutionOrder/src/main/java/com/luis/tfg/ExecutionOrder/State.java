@@ -113,7 +113,7 @@
 	    public boolean hasTransitionTo(String stateId) {
 	        return transitions.containsKey(stateId);
 	    }
-	
+
 	    // Reiniciar repeticiones
 	    public void resetRepetitions() {
 	        currentRepetitions = 0;
@@ -0,0 +1,60 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asignación de nombres de método a símbolos enteros densos.
+ *
+ * <p>El símbolo {@link #UNKNOWN} (0) representa cualquier método que no aparece en el patrón,
+ * de modo que la tabla de transiciones siempre tiene una columna para él.</p>
+ */
+public final class SymbolTable {
+
+    public static final int UNKNOWN = 0;
+
+    private final Map<String, Integer> symbols;
+    private final String[] names;
+
+    private SymbolTable(Map<String, Integer> symbols, String[] names) {
+        this.symbols = symbols;
+        this.names = names;
+    }
+
+    /**
+     * Crea la tabla asignando los símbolos en el orden en que aparecen los nombres.
+     * Los nombres repetidos conservan el primer símbolo asignado.
+     */
+    static SymbolTable of(List<String> methodNames) {
+        Map<String, Integer> symbols = new HashMap<>();
+        String[] names = new String[methodNames.size() + 1];
+        names[UNKNOWN] = "?";
+        int next = UNKNOWN + 1;
+        for (String name : methodNames) {
+            if (!symbols.containsKey(name)) {
+                symbols.put(name, next);
+                names[next++] = name;
+            }
+        }
+        String[] compact = new String[next];
+        System.arraycopy(names, 0, compact, 0, next);
+        return new SymbolTable(symbols, compact);
+    }
+
+    /**
+     * Símbolo asignado al método, o {@link #UNKNOWN} si el patrón no lo menciona.
+     */
+    public int lookup(String methodName) {
+        Integer symbol = symbols.get(methodName);
+        return symbol != null ? symbol : UNKNOWN;
+    }
+
+    public String name(int symbol) {
+        return symbol >= 0 && symbol < names.length ? names[symbol] : names[UNKNOWN];
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,360 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validación fuera de línea de secuencias de llamadas grabadas contra un patrón de
+ * {@link ExecutionOrder}.
+ *
+ * <p>Cada línea del fichero es la secuencia de llamadas de una instancia, con los nombres de método
+ * separados por espacios o comas; las líneas vacías y las que empiezan por {@code #}, aunque lleven espacios delante, se ignoran. Una
+ * secuencia viola el patrón si alguna llamada no está permitida o si termina fuera de un estado
+ * final. El fichero se lee por bloques de {@link #BATCH_SIZE} líneas y cada bloque se valida en un
+ * {@link ForkJoinPool} mientras se lee el siguiente, así que sólo hay dos bloques en memoria.</p>
+ *
+ * <pre>
+ * java -cp agente.jar com.luis.tfg.ExecutionOrder.TraceReplay "(open read{0,} close)" trazas.txt
+ * </pre>
+ */
+public final class TraceReplay {
+
+    static final int BATCH_SIZE = 8192;
+    // Secuencias por debajo de las cuales una tarea ya no se divide
+    private static final int SPLIT_THRESHOLD = 256;
+    static final int DEFAULT_MAX_REPORTED = 100;
+
+    private final ExecutionOrderAutomaton automaton;
+    private final TransitionTable table;
+    private final ForkJoinPool pool;
+    private final int maxReported;
+
+    public TraceReplay(ExecutionOrderAutomaton automaton, ForkJoinPool pool, int maxReported) {
+        if (maxReported < 0) {
+            throw new IllegalArgumentException("Invalid maximum number of reported violations: " + maxReported);
+        }
+        this.automaton = automaton;
+        this.table = automaton.getTransitionTable();
+        this.pool = pool;
+        this.maxReported = maxReported;
+    }
+
+    public TraceReplay(String regex) {
+        this(ExecutionOrderAutomaton.forPattern(regex), ForkJoinPool.commonPool(), DEFAULT_MAX_REPORTED);
+    }
+
+    public ExecutionOrderAutomaton getAutomaton() {
+        return automaton;
+    }
+
+    public Report replay(Path traceFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(traceFile, StandardCharsets.UTF_8)) {
+            return replay(reader);
+        }
+    }
+
+    public Report replay(Reader traces) throws IOException {
+        BufferedReader reader = traces instanceof BufferedReader ? (BufferedReader) traces : new BufferedReader(traces);
+        Report report = new Report(maxReported);
+        ForkJoinTask<List<Violation>> pending = null;
+        long lineNumber = 0;
+
+        List<String> lines = new ArrayList<>(BATCH_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+            if (lines.size() == BATCH_SIZE) {
+                ForkJoinTask<List<Violation>> next = pool.submit(new ReplayTask(lines, lineNumber, 0, lines.size(), report));
+                lineNumber += lines.size();
+                lines = new ArrayList<>(BATCH_SIZE);
+                if (pending != null) {
+                    report.add(pending.join());
+                }
+                pending = next;
+            }
+        }
+        ForkJoinTask<List<Violation>> last = pool.submit(new ReplayTask(lines, lineNumber, 0, lines.size(), report));
+        if (pending != null) {
+            report.add(pending.join());
+        }
+        report.add(last.join());
+        return report;
+    }
+
+    /**
+     * Valida una secuencia y devuelve su violación, o null si la secuencia es correcta o no tiene
+     * llamadas.
+     */
+    Violation validate(long lineNumber, String sequence) {
+        SymbolTable symbols = table.getSymbols();
+        long cursor = TransitionTable.INITIAL_STATE;
+        int position = 0;
+        int length = sequence.length();
+        int start = 0;
+        while (start < length) {
+            if (isSeparator(sequence.charAt(start))) {
+                start++;
+                continue;
+            }
+            int end = start + 1;
+            while (end < length && !isSeparator(sequence.charAt(end))) {
+                end++;
+            }
+            String methodName = sequence.substring(start, end);
+            long next = table.step(cursor, symbols.lookup(methodName));
+            if (next == TransitionTable.REJECTED) {
+                return new Violation(lineNumber, sequence, position, methodName,
+                        table.rejection(TransitionTable.state(cursor), methodName).getMessage());
+            }
+            cursor = next;
+            position++;
+            start = end;
+        }
+        if (position == 0 || table.isFinal(TransitionTable.state(cursor))) {
+            return null;
+        }
+        return new Violation(lineNumber, sequence, position, null,
+                "[ERROR] Sequence ends in non-final state: " + table.getGraphState(TransitionTable.state(cursor)).getId());
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ',' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Línea vacía o cuyo primer carácter que no es un espacio es {@code #}.
+     */
+    private static boolean isSkipped(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '#';
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Valida las líneas {@code [from, to)} de un bloque, dividiéndolas por la mitad mientras sean
+     * muchas. Devuelve las violaciones que quedan por debajo del límite del informe, en orden.
+     */
+    private final class ReplayTask extends RecursiveTask<List<Violation>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> lines;
+        private final long firstLineNumber;
+        private final int from;
+        private final int to;
+        private final Report report;
+
+        ReplayTask(List<String> lines, long firstLineNumber, int from, int to, Report report) {
+            this.lines = lines;
+            this.firstLineNumber = firstLineNumber;
+            this.from = from;
+            this.to = to;
+            this.report = report;
+        }
+
+        @Override
+        protected List<Violation> compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                ReplayTask left = new ReplayTask(lines, firstLineNumber, from, middle, report);
+                left.fork();
+                List<Violation> right = new ReplayTask(lines, firstLineNumber, middle, to, report).compute();
+                List<Violation> violations = left.join();
+                if (violations.isEmpty()) {
+                    return right;
+                }
+                if (!right.isEmpty()) {
+                    violations = new ArrayList<>(violations);
+                    violations.addAll(right);
+                }
+                return violations;
+            }
+
+            List<Violation> violations = Collections.emptyList();
+            int sequences = 0;
+            for (int i = from; i < to; i++) {
+                String sequence = lines.get(i);
+                if (isSkipped(sequence)) {
+                    continue;
+                }
+                sequences++;
+                Violation violation = validate(firstLineNumber + i + 1, sequence);
+                if (violation != null && report.countViolation()) {
+                    if (violations.isEmpty()) {
+                        violations = new ArrayList<>();
+                    }
+                    violations.add(violation);
+                }
+            }
+            report.sequences.addAndGet(sequences);
+            return violations;
+        }
+    }
+
+    /**
+     * Resultado de una validación: cuántas secuencias se han comprobado, cuántas violan el patrón y
+     * las primeras violaciones, hasta el máximo indicado.
+     */
+    public static final class Report {
+        private final int maxReported;
+        private final AtomicLong sequences = new AtomicLong();
+        private final AtomicLong violationCount = new AtomicLong();
+        private final List<Violation> violations = new ArrayList<>();
+
+        Report(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        /**
+         * Cuenta una violación y dice si cabe en el informe. Al validar en paralelo las que se
+         * guardan no son necesariamente las primeras del fichero, pero se devuelven ordenadas.
+         */
+        private boolean countViolation() {
+            return violationCount.incrementAndGet() <= maxReported;
+        }
+
+        private void add(List<Violation> batch) {
+            violations.addAll(batch);
+        }
+
+        public long getSequenceCount() {
+            return sequences.get();
+        }
+
+        public long getViolationCount() {
+            return violationCount.get();
+        }
+
+        public List<Violation> getViolations() {
+            return Collections.unmodifiableList(violations);
+        }
+    }
+
+    /**
+     * Secuencia que viola el patrón.
+     */
+    public static final class Violation {
+        private final long lineNumber;
+        private final String sequence;
+        private final int position;
+        private final String methodName;
+        private final String message;
+
+        Violation(long lineNumber, String sequence, int position, String methodName, String message) {
+            this.lineNumber = lineNumber;
+            this.sequence = sequence;
+            this.position = position;
+            this.methodName = methodName;
+            this.message = message;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Posición (desde 0) de la llamada rechazada o, si la secuencia termina fuera de un estado
+         * final, su número de llamadas.
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * Método rechazado, o null si la secuencia está incompleta.
+         */
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNumber + ", call " + position + ": " + message;
+        }
+    }
+
+    /**
+     * {@code TraceReplay <patrón> <fichero> [--parallelism N] [--max-reported N]}. Termina con 0 si
+     * todas las secuencias cumplen el patrón, 1 si alguna lo viola y 2 si los argumentos no son válidos.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        String regex = null;
+        Path traceFile = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int maxReported = DEFAULT_MAX_REPORTED;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--parallelism":
+                        parallelism = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-reported":
+                        maxReported = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (regex == null) {
+                            regex = args[i];
+                        } else if (traceFile == null) {
+                            traceFile = Paths.get(args[i]);
+                        } else {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                }
+            }
+            if (traceFile == null) {
+                throw new IllegalArgumentException("Missing pattern or trace file");
+            }
+        } catch (RuntimeException e) {
+            System.out.println("[ERROR] " + e.getMessage());
+            System.out.println("Usage: TraceReplay <pattern> <trace file> [--parallelism N] [--max-reported N]");
+            return 2;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            TraceReplay replay = new TraceReplay(ExecutionOrderAutomaton.forPattern(regex), pool, maxReported);
+            long start = System.nanoTime();
+            Report report = replay.replay(traceFile);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            for (Violation violation : report.getViolations()) {
+                System.out.println("[WARNING] " + violation + " in: " + violation.getSequence());
+            }
+            System.out.println("[INFO] Replayed " + report.getSequenceCount() + " sequences in " + elapsedMillis
+                    + " ms, " + report.getViolationCount() + " violations");
+            return report.getViolationCount() == 0 ? 0 : 1;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[ERROR] Trace replay failed: " + e.getMessage());
+            return 2;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
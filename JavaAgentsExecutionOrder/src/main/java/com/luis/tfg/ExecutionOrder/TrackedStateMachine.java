@@ -0,0 +1,18 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Parámetro de advice que recibe la StateMachine de la instancia.
+ *
+ * <p>En la clase que declara el campo {@link ExecutionOrderTracked#STATE_MACHINE_FIELD} es una
+ * lectura del campo; en sus subclases anotadas, que no pueden leerlo porque es privado, una llamada a
+ * {@link ExecutionOrderTracked#getExecutionOrderStateMachine()}.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface TrackedStateMachine {
+}
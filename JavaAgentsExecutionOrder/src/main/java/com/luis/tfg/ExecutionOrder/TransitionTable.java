@@ -0,0 +1,397 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Autómata determinista y mínimo de un patrón, generado por {@link PatternCompiler}.
+ *
+ * <p>La transición de un estado con un símbolo se guarda en un único array plano:
+ * {@code next[estado * símbolos + símbolo]}, con {@link #NO_TRANSITION} cuando la llamada no
+ * está permitida.</p>
+ *
+ * <p>El cursor de la máquina de estados es un {@code long} con el estado en los 32 bits bajos y,
+ * en los altos, el registro: la cuenta de una repetición compilada como contador o la máscara de
+ * operandos ya llamados de un {@code &} (ver {@link #step(long, int)}). Si el patrón tiene
+ * contadores o máscaras, cada transición indica además qué hace con el registro.</p>
+ *
+ * <p>Para patrones muy largos el compilador puede devolver en su lugar una
+ * {@link LazyTransitionTable}, que calcula las filas según las van necesitando los cursores.</p>
+ */
+public class TransitionTable {
+
+    public static final int NO_TRANSITION = -1;
+    public static final int INITIAL_STATE = 0;
+
+    // Motivo por el que un estado rechaza una llamada (para reconstruir el mensaje de error)
+    static final byte INVALID_TRANSITION = 0;
+    static final byte FROM_FINAL = 1;
+    static final byte FROM_DECLARED_FINAL = 2;
+    static final byte INVALID_SPECIAL = 3;
+
+    // Qué hace una transición con el registro del cursor
+    static final byte KEEP = 0;
+    static final byte RESET = 1;
+    static final byte INCREMENT = 2;
+    static final byte MARK = 3;
+
+    /** Límite de un estado sin contador activo. */
+    static final int NO_LIMIT = Integer.MAX_VALUE;
+    /** Resultado de {@link #step(long, int)} cuando la llamada no está permitida. */
+    static final long REJECTED = -1L;
+    /** Versión del formato de {@link #writeTo(DataOutput)}; las tablas de otra versión se ignoran. */
+    static final int FORMAT_VERSION = 1;
+
+    private final SymbolTable symbols;
+    private final int symbolCount;
+    private final int[] next;
+    private final boolean[] finalStates;
+    private final byte[] rejection;
+    private final State[] graphStates;
+    // null si el patrón no tiene contadores ni máscaras
+    private final byte[] actions;
+    private final int[] arguments;
+    private final int[] crossNext;
+    private final int[] limits;
+    // Estados finales sin más llamadas posibles que FINAL; null en una tabla perezosa
+    private final boolean[] terminalStates;
+    // 0 hasta que se calcula (ver fingerprint())
+    private volatile long fingerprint;
+
+    TransitionTable(SymbolTable symbols, int[] next, boolean[] finalStates, byte[] rejection,
+                    byte[] actions, int[] arguments, int[] crossNext, int[] limits, State[] graphStates) {
+        this.symbols = symbols;
+        this.symbolCount = symbols.size();
+        this.next = next;
+        this.finalStates = finalStates;
+        this.rejection = rejection;
+        this.actions = actions;
+        this.arguments = arguments;
+        this.crossNext = crossNext;
+        this.limits = limits;
+        this.graphStates = graphStates;
+        this.terminalStates = next != null ? terminalStates(symbols, next, finalStates) : null;
+    }
+
+    private static boolean[] terminalStates(SymbolTable symbols, int[] next, boolean[] finalStates) {
+        int symbolCount = symbols.size();
+        int finalSymbol = symbols.lookup(PatternParser.FINAL);
+        boolean[] terminal = new boolean[finalStates.length];
+        for (int state = 0; state < finalStates.length; state++) {
+            terminal[state] = finalStates[state];
+            for (int symbol = 0; symbol < symbolCount && terminal[state]; symbol++) {
+                if (symbol != finalSymbol && next[state * symbolCount + symbol] != NO_TRANSITION) {
+                    terminal[state] = false;
+                }
+            }
+        }
+        return terminal;
+    }
+
+    /**
+     * Para {@link LazyTransitionTable}, que no usa los arrays.
+     */
+    TransitionTable(SymbolTable symbols) {
+        this(symbols, null, null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Siguiente estado tras llamar al método {@code symbol}, o {@link #NO_TRANSITION}.
+     */
+    public int next(int state, int symbol) {
+        return next[state * symbolCount + symbol];
+    }
+
+    /**
+     * Avanza el cursor con el método {@code symbol}, o devuelve {@link #REJECTED}. En una vuelta de
+     * un contador la cuenta aumenta; con un operando de un {@code &} se marca su bit, y si ya estaba
+     * marcado la llamada se rechaza. Cuando el registro llega al límite del estado se pasa al estado
+     * siguiente con el registro a cero (puede empezar ahí otro contador o máscara).
+     */
+    long step(long cursor, int symbol) {
+        int state = state(cursor);
+        int index = state * symbolCount + symbol;
+        int target = next[index];
+        if (target == NO_TRANSITION) {
+            return REJECTED;
+        }
+        if (actions == null) {
+            return target;
+        }
+        return advance(cursor, target, actions[index], arguments[index], crossNext[index], limits[state]);
+    }
+
+    /**
+     * Aplica al registro del cursor la acción de una transición permitida hacia {@code target}.
+     */
+    static long advance(long cursor, int target, byte action, int argument, int cross, int limit) {
+        int value;
+        switch (action) {
+            case RESET:
+                return target;
+            case INCREMENT:
+                value = register(cursor) + 1;
+                break;
+            case MARK:
+                if ((register(cursor) & argument) != 0) {
+                    return REJECTED;
+                }
+                value = register(cursor) | argument;
+                break;
+            default:
+                return cursor(target, register(cursor));
+        }
+        return value == limit ? cross : cursor(target, value);
+    }
+
+    static long cursor(int state, int count) {
+        return ((long) count << 32) | state;
+    }
+
+    static int state(long cursor) {
+        return (int) cursor;
+    }
+
+    static int register(long cursor) {
+        return (int) (cursor >>> 32);
+    }
+
+    /**
+     * Si alguna transición usa el registro del cursor (contadores o máscaras de {@code &}).
+     */
+    public boolean hasRegisters() {
+        return actions != null;
+    }
+
+    public boolean isFinal(int state) {
+        return finalStates[state];
+    }
+
+    /**
+     * Si el estado es final y desde él sólo se puede llamar a FINAL: el protocolo de la instancia ha
+     * terminado y no admite llamadas posteriores. En una tabla perezosa es siempre false, porque
+     * saberlo obligaría a calcular la fila del estado al llegar a él.
+     */
+    public boolean isTerminal(int state) {
+        return terminalStates != null && terminalStates[state];
+    }
+
+    /**
+     * Primer estado terminal, o {@link #NO_TRANSITION} si no hay ninguno o la tabla es perezosa.
+     */
+    int terminalState() {
+        if (terminalStates != null) {
+            for (int state = 0; state < terminalStates.length; state++) {
+                if (terminalStates[state]) {
+                    return state;
+                }
+            }
+        }
+        return NO_TRANSITION;
+    }
+
+    /**
+     * Número de estados; en una tabla perezosa, los descubiertos hasta ahora.
+     */
+    public int getStateCount() {
+        return finalStates.length;
+    }
+
+    /**
+     * Si los estados se calculan a medida que se llega a ellos ({@link LazyTransitionTable}).
+     */
+    boolean isLazy() {
+        return false;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Vista con nombre del estado de la tabla, para depuración y mensajes de error.
+     */
+    public State getGraphState(int state) {
+        return graphStates[state];
+    }
+
+    /**
+     * Construye la excepción que lanzaría la máquina de estados al rechazar la llamada.
+     */
+    IllegalStateException rejection(int state, String methodName) {
+        return rejection(rejection[state], graphStates[state].getId(), methodName);
+    }
+
+    static IllegalStateException rejection(byte reason, String stateId, String methodName) {
+        switch (reason) {
+            case FROM_FINAL:
+                return new IllegalStateException("[ERROR] Cannot transition from final state: FINAL");
+            case FROM_DECLARED_FINAL:
+                return new IllegalStateException("[ERROR] Cannot transition from declared final state: " + stateId);
+            case INVALID_SPECIAL:
+                return new IllegalStateException("[ERROR] Invalid special transition: " + methodName);
+            default:
+                return new IllegalStateException("[ERROR] Invalid transition from " + stateId + " to " + methodName + ".");
+        }
+    }
+
+    /**
+     * Si {@code cursor} puede ser un cursor de esta tabla: un estado existente y, si la tabla no usa
+     * registros, el registro a cero.
+     */
+    boolean isValidCursor(long cursor) {
+        int state = state(cursor);
+        return state >= 0 && state < getStateCount() && (hasRegisters() || register(cursor) == 0);
+    }
+
+    /**
+     * Huella de la tabla (FNV-1a de 64 bits de {@link #writeTo(DataOutput)}), distinta de 0 y de -1. Dos
+     * tablas con la misma huella numeran igual sus estados, así que un cursor guardado con una se
+     * puede restaurar en la otra aunque sea de otra ejecución de la JVM.
+     *
+     * @throws IllegalStateException si la tabla es perezosa: sus estados se numeran en el orden en
+     *                               que se descubren.
+     */
+    long fingerprint() {
+        long value = fingerprint;
+        if (value == 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                writeTo(new DataOutputStream(bytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            value = 0xcbf29ce484222325L;
+            for (byte b : bytes.toByteArray()) {
+                value = (value ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            // 0 es una posición vacía de MappedCursorStore y -1 una instantánea de protocolo terminado
+            if (value == 0 || value == ExecutionOrderSnapshot.FINISHED) {
+                value = 1;
+            }
+            fingerprint = value;
+        }
+        return value;
+    }
+
+    /**
+     * Escribe la tabla completa para volver a cargarla con {@link #readFrom(DataInput)} sin compilar
+     * el patrón (ver {@link ExecutionOrderProcessor}). Los estados del grafo se guardan por nombre;
+     * sus transiciones se reconstruyen a partir de la tabla.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        if (isLazy()) {
+            throw new IllegalStateException("A lazy transition table cannot be serialized");
+        }
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(symbolCount);
+        for (int symbol = SymbolTable.UNKNOWN + 1; symbol < symbolCount; symbol++) {
+            out.writeUTF(symbols.name(symbol));
+        }
+        int stateCount = finalStates.length;
+        out.writeInt(stateCount);
+        for (int state = 0; state < stateCount; state++) {
+            out.writeBoolean(finalStates[state]);
+            out.writeByte(rejection[state]);
+            out.writeUTF(graphStates[state].getId());
+            out.writeUTF(graphStates[state].getName());
+        }
+        writeInts(out, next);
+        out.writeBoolean(actions != null);
+        if (actions != null) {
+            out.write(actions);
+            writeInts(out, arguments);
+            writeInts(out, crossNext);
+            writeInts(out, limits);
+        }
+    }
+
+    /**
+     * Lee una tabla escrita con {@link #writeTo(DataOutput)}.
+     *
+     * @throws IOException si los datos están truncados o son de otra versión del formato.
+     */
+    static TransitionTable readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported transition table format: " + version);
+        }
+        int symbolCount = in.readInt();
+        List<String> methodNames = new ArrayList<>();
+        for (int symbol = SymbolTable.UNKNOWN + 1; symbol < symbolCount; symbol++) {
+            methodNames.add(in.readUTF());
+        }
+        int stateCount = in.readInt();
+        boolean[] finalStates = new boolean[stateCount];
+        byte[] rejection = new byte[stateCount];
+        String[] ids = new String[stateCount];
+        String[] names = new String[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            finalStates[state] = in.readBoolean();
+            rejection[state] = in.readByte();
+            ids[state] = in.readUTF();
+            names[state] = in.readUTF();
+        }
+        int[] next = readInts(in, stateCount * symbolCount);
+        byte[] actions = null;
+        int[] arguments = null;
+        int[] crossNext = null;
+        int[] limits = null;
+        if (in.readBoolean()) {
+            actions = new byte[next.length];
+            in.readFully(actions);
+            arguments = readInts(in, next.length);
+            crossNext = readInts(in, next.length);
+            limits = readInts(in, stateCount);
+        }
+        State[] graphStates = graph(ids, names, finalStates, next, crossNext, symbolCount);
+        return new TransitionTable(SymbolTable.of(methodNames), next, finalStates, rejection,
+                actions, arguments, crossNext, limits, graphStates);
+    }
+
+    /**
+     * Crea los estados con nombre y les añade las transiciones de la tabla, incluidas las que se
+     * toman al completar un contador o una máscara.
+     */
+    static State[] graph(String[] ids, String[] names, boolean[] finalStates, int[] next, int[] crossNext,
+                         int symbolCount) {
+        int stateCount = ids.length;
+        State[] states = new State[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            states[state] = new State(ids[state], finalStates[state], 0, names[state]);
+        }
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int target = next[state * symbolCount + symbol];
+                if (target != NO_TRANSITION) {
+                    states[state].addTransition(states[target]);
+                }
+                int cross = crossNext == null ? NO_TRANSITION : crossNext[state * symbolCount + symbol];
+                if (cross != NO_TRANSITION) {
+                    states[state].addTransition(states[cross]);
+                }
+            }
+        }
+        return states;
+    }
+
+    private static void writeInts(DataOutput out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInput in, int length) throws IOException {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,203 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Modo de auditoría: las llamadas fuera de orden en los métodos tejidos se cuentan en lugar de lanzar
+ * una excepción.
+ *
+ * <p>Se activa con los argumentos del agente, {@code -javaagent:agente.jar=mode=audit}. Cada violación
+ * suma uno al contador de su clase, estado de origen y método, un {@link LongAdder} para que los hilos
+ * que la repiten no compitan por la misma variable. No se construye ninguna excepción: la primera vez
+ * se escribe una línea de aviso y después sólo se cuenta. Con {@code stackSample=N} además se guarda la
+ * pila de, de media, una de cada N violaciones.</p>
+ */
+public final class ViolationAudit {
+
+    /**
+     * Qué hace el código tejido con una llamada fuera de orden.
+     */
+    public enum Mode {
+        /** Lanza {@link SecurityException}. */
+        ENFORCE,
+        /** La cuenta y deja que el método se ejecute, sin mover la StateMachine. */
+        AUDIT
+    }
+
+    private static final ConcurrentHashMap<Key, Violation> violations = new ConcurrentHashMap<>();
+    private static volatile Mode mode = Mode.ENFORCE;
+    // 0 si no se guardan pilas
+    private static volatile int stackSample;
+
+    private ViolationAudit() {
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setMode(Mode newMode) {
+        mode = newMode;
+    }
+
+    /**
+     * Guarda la pila de una de cada {@code rate} violaciones de media; 0 para no guardar ninguna.
+     */
+    public static void setStackSample(int rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Invalid stack sample rate: " + rate);
+        }
+        stackSample = rate;
+    }
+
+    static boolean isAuditing() {
+        return mode == Mode.AUDIT;
+    }
+
+    /**
+     * Cuenta la llamada rechazada por la StateMachine de una instancia de {@code type}.
+     */
+    static void record(Class<?> type, StateMachine stateMachine, int methodSymbol) {
+        TransitionTable table = stateMachine.getAutomaton().getTransitionTable();
+        Key key = new Key(type.getName(), table, stateMachine.currentState(), methodSymbol);
+        Violation violation = violations.get(key);
+        if (violation == null) {
+            // Los nombres y el contador sólo se crean la primera vez
+            violation = violations.computeIfAbsent(key, k -> {
+                Violation first = new Violation(k.className, table.getGraphState(k.state).getId(),
+                        table.getSymbols().name(k.symbol));
+                String recentCalls = stateMachine.recentCalls();
+                System.out.println("[WARNING] Execution order violation (audit): " + first
+                        + (recentCalls != null ? ". Recent calls: " + recentCalls : ""));
+                return first;
+            });
+        }
+        violation.count.increment();
+
+        int rate = stackSample;
+        if (rate > 0 && ThreadLocalRandom.current().nextInt(rate) == 0) {
+            violation.sampledStack = Thread.currentThread().getStackTrace();
+        }
+    }
+
+    /**
+     * Violaciones contadas hasta ahora, de la más frecuente a la menos.
+     */
+    public static List<Violation> getViolations() {
+        List<Violation> snapshot = new ArrayList<>(violations.values());
+        snapshot.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return snapshot;
+    }
+
+    public static long getTotalViolations() {
+        long total = 0;
+        for (Violation violation : violations.values()) {
+            total += violation.getCount();
+        }
+        return total;
+    }
+
+    public static void reset() {
+        violations.clear();
+    }
+
+    /**
+     * Clave de búsqueda de una violación: números del estado y del método en la tabla del patrón, sin
+     * construir sus nombres.
+     */
+    private static final class Key {
+        private final String className;
+        private final TransitionTable table;
+        private final int state;
+        private final int symbol;
+
+        Key(String className, TransitionTable table, int state, int symbol) {
+            this.className = className;
+            this.table = table;
+            this.state = state;
+            this.symbol = symbol;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return table == other.table && state == other.state && symbol == other.symbol
+                    && className.equals(other.className);
+        }
+
+        @Override
+        public int hashCode() {
+            return (className.hashCode() * 31 + state) * 31 + symbol;
+        }
+    }
+
+    /**
+     * Contador de una violación: la clase, el estado desde el que se hizo la llamada y el método llamado.
+     */
+    public static final class Violation {
+        private final String className;
+        private final String fromState;
+        private final String methodName;
+        private final LongAdder count = new LongAdder();
+        private volatile StackTraceElement[] sampledStack;
+
+        Violation(String className, String fromState, String methodName) {
+            this.className = className;
+            this.fromState = fromState;
+            this.methodName = methodName;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getFromState() {
+            return fromState;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Última pila guardada, o null si no se ha muestreado ninguna.
+         */
+        public StackTraceElement[] getSampledStack() {
+            StackTraceElement[] stack = sampledStack;
+            return stack != null ? Arrays.copyOf(stack, stack.length) : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Violation)) {
+                return false;
+            }
+            Violation other = (Violation) o;
+            return className.equals(other.className) && fromState.equals(other.fromState)
+                    && methodName.equals(other.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(className, fromState, methodName);
+        }
+
+        @Override
+        public String toString() {
+            return className + ": " + fromState + " -> " + methodName;
+        }
+    }
+}
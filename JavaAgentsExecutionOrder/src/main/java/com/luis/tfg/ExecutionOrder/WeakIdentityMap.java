@@ -0,0 +1,121 @@
+package com.luis.tfg.ExecutionOrder;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Mapa concurrente con claves débiles comparadas por identidad.
+ *
+ * <p>No usa el equals/hashCode de las claves, así que dos objetos iguales según el usuario tienen
+ * entradas distintas, y no impide que las claves se recojan. Las entradas cuyas claves ya se han
+ * recogido se eliminan al procesar la {@link ReferenceQueue} en cada operación.</p>
+ */
+final class WeakIdentityMap<K, V> {
+
+    private final ConcurrentHashMap<Object, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    V get(K key) {
+        expunge();
+        return map.get(new LookupKey(key));
+    }
+
+    boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Asocia el valor a la clave si no tenía ninguno. Devuelve el valor anterior, o null.
+     */
+    V putIfAbsent(K key, V value) {
+        expunge();
+        return map.putIfAbsent(new WeakKey<>(key, queue), value);
+    }
+
+    V remove(K key) {
+        expunge();
+        return map.remove(new LookupKey(key));
+    }
+
+    int size() {
+        expunge();
+        return map.size();
+    }
+
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        expunge();
+        map.forEach((key, value) -> {
+            @SuppressWarnings("unchecked")
+            K referent = ((WeakKey<K>) key).get();
+            if (referent != null) {
+                action.accept(referent, value);
+            }
+        });
+    }
+
+    private void expunge() {
+        Object reference;
+        while ((reference = queue.poll()) != null) {
+            map.remove(reference);
+        }
+    }
+
+    /**
+     * Clave almacenada en el mapa. Una vez recogido el objeto sólo es igual a sí misma,
+     * que es lo que necesita {@link #expunge()} para eliminarla.
+     */
+    private static final class WeakKey<K> extends WeakReference<K> {
+        private final int hash;
+
+        WeakKey(K referent, ReferenceQueue<K> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+            Object referent = get();
+            if (referent == null) {
+                return false;
+            }
+            if (other instanceof WeakKey) {
+                return referent == ((WeakKey<?>) other).get();
+            }
+            return other instanceof LookupKey && referent == ((LookupKey) other).referent;
+        }
+    }
+
+    /**
+     * Clave temporal para consultas, evita crear una referencia débil en cada búsqueda.
+     */
+    private static final class LookupKey {
+        private final Object referent;
+
+        LookupKey(Object referent) {
+            this.referent = referent;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other instanceof WeakKey) {
+                return referent == ((WeakKey<?>) other).get();
+            }
+            return other instanceof LookupKey && referent == ((LookupKey) other).referent;
+        }
+    }
+}
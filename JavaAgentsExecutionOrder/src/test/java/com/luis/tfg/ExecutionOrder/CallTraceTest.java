@@ -0,0 +1,86 @@
+package com.luis.tfg.ExecutionOrder;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class CallTraceTest {
+
+    @Test
+    public void testRingKeepsLastCallsInOrder() {
+        SymbolTable symbols = SymbolTable.of(List.of("a", "b", "c"));
+        CallTrace trace = new CallTrace(3);
+        assertEquals("[]", trace.describe(symbols));
+
+        // 3 se redondea a 4 posiciones
+        for (String name : new String[] {"a", "b", "c", "a", "x", "b"}) {
+            trace.record(symbols.lookup(name));
+        }
+        assertEquals("[c, a, ?, b]", trace.describe(symbols));
+        assertNull(CallTrace.ofSize(0));
+        assertThrows(IllegalArgumentException.class, () -> new CallTrace(-1));
+        assertThrows(IllegalArgumentException.class, () -> new CallTrace(CallTrace.MAX_SIZE + 1));
+    }
+
+    @Test
+    public void testInvalidPropertySizeIsCorrected() {
+        assertEquals(0, CallTrace.checkedSize(-1));
+        assertEquals(8, CallTrace.checkedSize(8));
+        assertEquals(CallTrace.MAX_SIZE, CallTrace.checkedSize(Integer.MAX_VALUE));
+
+        CallTrace largest = new CallTrace(CallTrace.MAX_SIZE);
+        for (int i = 0; i <= CallTrace.MAX_SIZE; i++) {
+            largest.record(i);
+        }
+        int[] recent = largest.recent();
+        assertEquals(CallTrace.MAX_SIZE, recent.length);
+        assertEquals(1, recent[0]);
+        assertEquals(CallTrace.MAX_SIZE, recent[recent.length - 1]);
+    }
+
+    @Test
+    public void testViolationReportIncludesRecentCalls() {
+        StateMachine stateMachine = new StateMachine(ExecutionOrderAutomaton.forPattern("(open read{0,} close)"),
+                StateMachine.Engine.TABLE, 4);
+        stateMachine.validateTransition("open");
+        stateMachine.validateTransition("read");
+        stateMachine.validateTransition("close");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> stateMachine.validateTransition("read"));
+        assertTrue(e.getMessage().endsWith("Recent calls: [open, read, close, read]"), e.getMessage());
+        assertEquals("[open, read, close, read]", stateMachine.recentCalls());
+
+        assertNull(new StateMachine(ExecutionOrderAutomaton.forPattern("(open read{0,} close)"),
+                StateMachine.Engine.TABLE, 0).recentCalls());
+    }
+
+    @Test
+    public void testRecordingDoesNotAllocate() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        StateMachine stateMachine = new StateMachine(ExecutionOrderAutomaton.forPattern("(open read{0,} close)"),
+                StateMachine.Engine.TABLE, 16);
+        int open = stateMachine.getAutomaton().getTransitionTable().getSymbols().lookup("open");
+        int read = stateMachine.getAutomaton().getTransitionTable().getSymbols().lookup("read");
+        stateMachine.tryTransition(open);
+        // Calentamiento para que el JIT no cuente sus propias reservas
+        for (int i = 0; i < 100_000; i++) {
+            stateMachine.tryTransition(read);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100_000; i++) {
+            stateMachine.tryTransition(read);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // Margen para la propia lectura del contador
+        assertTrue(allocated < 1024, "Allocated " + allocated + " bytes");
+    }
+}
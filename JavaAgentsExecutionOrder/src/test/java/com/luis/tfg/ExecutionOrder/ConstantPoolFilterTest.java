@@ -0,0 +1,68 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConstantPoolFilterTest {
+
+    private static byte[] classFile(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream("/" + internalName(type) + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    @Test
+    public void testOnlyAnnotatedClassesAreCandidates() throws IOException {
+        ConstantPoolFilter filter = new ConstantPoolFilter(null, MethodOrderAgent.DEFAULT_IGNORED_PREFIXES);
+
+        assertTrue(filter.isCandidate(internalName(EcommerceOrder.class), classFile(EcommerceOrder.class)));
+        assertFalse(filter.isCandidate(internalName(StateMachine.class), classFile(StateMachine.class)));
+        // No está anotada pero tiene una variable local de tipo ExecutionOrder: la descarta ByteBuddy
+        assertTrue(filter.isCandidate(internalName(ExecutionOrderBenchmark.LegacyConstructorAdvice.class),
+                classFile(ExecutionOrderBenchmark.LegacyConstructorAdvice.class)));
+        assertFalse(filter.isCandidate(internalName(String.class), classFile(String.class)));
+        // Pool con constantes long/double, que ocupan dos entradas
+        assertFalse(filter.isCandidate(internalName(TransitionTable.class), classFile(TransitionTable.class)));
+    }
+
+    @Test
+    public void testIgnoredPrefixesAreNotScanned() throws IOException {
+        ConstantPoolFilter filter = new ConstantPoolFilter(null,
+                MethodOrderAgent.ignoredPrefixes(" com.luis.tfg.ExecutionOrder.Ecommerce , ,"));
+        assertFalse(filter.isCandidate(internalName(EcommerceOrder.class), classFile(EcommerceOrder.class)));
+        assertEquals(MethodOrderAgent.DEFAULT_IGNORED_PREFIXES.size() + 1,
+                MethodOrderAgent.ignoredPrefixes(" com.luis.tfg.ExecutionOrder.Ecommerce , ,").size());
+        assertEquals(MethodOrderAgent.DEFAULT_IGNORED_PREFIXES, MethodOrderAgent.ignoredPrefixes(null));
+    }
+
+    @Test
+    public void testUnreadableClassFilesAreLeftToByteBuddy() throws IOException {
+        byte[] bytes = classFile(StateMachine.class);
+        assertTrue(ConstantPoolFilter.mentions(Arrays.copyOf(bytes, 40), new byte[] {'x'}));
+        assertTrue(ConstantPoolFilter.mentions(new byte[4], new byte[] {'x'}));
+    }
+
+    @Test
+    public void testAgentTransformsOnlyAnnotatedClasses() throws Exception {
+        ClassFileTransformer transformer = MethodOrderAgent.transformer(Collections.emptyList());
+
+        ClassLoader loader = EcommerceOrder.class.getClassLoader();
+        assertNotNull(transformer.transform(loader, internalName(EcommerceOrder.class), null, null,
+                classFile(EcommerceOrder.class)));
+        assertNull(transformer.transform(loader, internalName(StateMachine.class), null, null,
+                classFile(StateMachine.class)));
+        assertNull(transformer.transform(loader, internalName(ExecutionOrderBenchmark.LegacyConstructorAdvice.class),
+                null, null, classFile(ExecutionOrderBenchmark.LegacyConstructorAdvice.class)));
+    }
+}
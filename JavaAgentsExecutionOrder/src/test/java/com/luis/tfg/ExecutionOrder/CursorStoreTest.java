@@ -0,0 +1,113 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CursorStoreTest {
+
+    private static final String PATTERN = "(open read{0,} close)";
+
+    private static StateMachine opened() {
+        StateMachine stateMachine = new StateMachine(ExecutionOrderAutomaton.forPattern(PATTERN));
+        stateMachine.validateTransition("open");
+        return stateMachine;
+    }
+
+    @Test
+    public void testWritesAreBatchedAndReadsCached() throws IOException {
+        InMemoryCursorStore store = new InMemoryCursorStore();
+        ExecutionOrderCursors cursors = new ExecutionOrderCursors(store, 3, 10);
+
+        cursors.save("order-1", opened());
+        cursors.save("order-2", opened());
+        assertEquals(0, store.getBatchCount());
+        cursors.save("order-3", opened());
+        assertEquals(1, store.getBatchCount());
+        assertEquals(3, store.size());
+
+        // Lo escrito ya está en caché
+        StateMachine restored = new StateMachine(ExecutionOrderAutomaton.forPattern(PATTERN));
+        assertTrue(cursors.restore("order-2", restored));
+        assertEquals("open", restored.getCurrentState().getId());
+        assertEquals(0, store.getLoadCount());
+
+        // Las claves que no existen también se guardan en caché
+        assertFalse(cursors.restore("order-9", restored));
+        assertFalse(cursors.restore("order-9", restored));
+        assertEquals(1, store.getLoadCount());
+
+        cursors.invalidate();
+        assertTrue(cursors.restore("order-1", restored));
+        assertEquals(2, store.getLoadCount());
+
+        cursors.remove("order-1");
+        assertFalse(cursors.restore("order-1", restored));
+        assertEquals(3, store.size());
+        cursors.close();
+        assertEquals(2, store.size());
+        assertEquals(2, store.getBatchCount());
+    }
+
+    @Test
+    public void testRegisteredInstanceIsRestored() throws IOException {
+        InMemoryCursorStore store = new InMemoryCursorStore();
+        try (ExecutionOrderCursors cursors = new ExecutionOrderCursors(store, 100, 0)) {
+            Object instance = new Object();
+            ExecutionOrderRegistry.register(instance, PATTERN);
+            ExecutionOrderRegistry.getStateMachine(instance).validateTransition("open");
+            cursors.save("entity", instance);
+            cursors.flush();
+        }
+
+        try (ExecutionOrderCursors cursors = new ExecutionOrderCursors(store, 100, 0)) {
+            Object instance = new Object();
+            ExecutionOrderRegistry.register(instance, PATTERN);
+            assertTrue(cursors.restore("entity", instance));
+            ExecutionOrderRegistry.getStateMachine(instance).validateTransition("close");
+
+            Object other = new Object();
+            ExecutionOrderRegistry.register(other, "(open close)");
+            assertThrows(IllegalArgumentException.class, () -> cursors.restore("entity", other));
+        }
+    }
+
+    @Test
+    public void testFileStoreIsSharedByTurns(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("cursors.log");
+        try (FileCursorStore first = FileCursorStore.open(file);
+             FileCursorStore second = FileCursorStore.open(file)) {
+            first.storeAll(Map.of("a", new byte[] {1, 2}, "b", new byte[] {3}));
+            // La segunda "JVM" ve lo que ha escrito la primera
+            assertArrayEquals(new byte[] {1, 2}, second.load("a"));
+
+            Map<String, byte[]> removal = new HashMap<>();
+            removal.put("a", null);
+            second.storeAll(removal);
+            assertNull(first.load("a"));
+            assertEquals(1, first.size());
+        }
+
+        // Registro incompleto al final: se ignora
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(raw.length());
+            raw.writeUTF("c");
+            raw.writeInt(16);
+        }
+        try (FileCursorStore reopened = FileCursorStore.open(file)) {
+            assertArrayEquals(new byte[] {3}, reopened.load("b"));
+            assertNull(reopened.load("c"));
+        }
+
+        Path other = Files.write(directory.resolve("other.log"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> FileCursorStore.open(other));
+    }
+}
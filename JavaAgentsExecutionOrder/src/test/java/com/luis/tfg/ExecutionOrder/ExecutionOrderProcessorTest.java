@@ -0,0 +1,144 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionOrderProcessorTest {
+
+    private static final String ECOMMERCE_PATTERN = "(addToCart checkout payment confirmation)";
+
+    /**
+     * Compila {@code source} con el procesador en {@code directory} y devuelve los diagnósticos.
+     */
+    private static List<Diagnostic<? extends JavaFileObject>> compile(Path directory, String className, String source)
+            throws IOException {
+        Path file = directory.resolve(className.replace('.', '/') + ".java");
+        Files.createDirectories(file.getParent());
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                    "-processor", ExecutionOrderProcessor.class.getName(), "-d", directory.toString());
+            compiler.getTask(null, files, diagnostics, options, null, files.getJavaFileObjects(file.toFile())).call();
+        }
+        return diagnostics.getDiagnostics();
+    }
+
+    private static boolean hasError(List<Diagnostic<? extends JavaFileObject>> diagnostics, String message) {
+        return diagnostics.stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.ERROR
+                && d.getMessage(null).contains(message));
+    }
+
+    @Test
+    public void testTestSourcesArePrecompiled() {
+        // La tabla de EcommerceOrder la genera el procesador al compilar las pruebas
+        TransitionTable precompiled = PrecompiledTable.load(EcommerceOrder.class.getName(),
+                EcommerceOrder.class.getClassLoader(), ECOMMERCE_PATTERN);
+        assertNotNull(precompiled);
+
+        TransitionTable compiled = PatternCompiler.compile(PatternParser.parse(ECOMMERCE_PATTERN));
+        assertEquals(compiled.getStateCount(), precompiled.getStateCount());
+        assertEquals(compiled.getSymbols().size(), precompiled.getSymbols().size());
+        for (int state = 0; state < compiled.getStateCount(); state++) {
+            assertEquals(compiled.getGraphState(state).getId(), precompiled.getGraphState(state).getId());
+            assertEquals(compiled.isFinal(state), precompiled.isFinal(state));
+            for (int symbol = 0; symbol < compiled.getSymbols().size(); symbol++) {
+                assertEquals(compiled.next(state, symbol), precompiled.next(state, symbol));
+            }
+        }
+
+        // Una tabla generada para otro patrón no se usa
+        assertNull(PrecompiledTable.load(EcommerceOrder.class.getName(), EcommerceOrder.class.getClassLoader(),
+                "(addToCart payment)"));
+        assertNull(PrecompiledTable.load(ExecutionOrderProcessorTest.class.getName(),
+                ExecutionOrderProcessorTest.class.getClassLoader(), ECOMMERCE_PATTERN));
+    }
+
+    @Test
+    public void testTablesWithRegistersSurviveEncoding() throws IOException {
+        String regex = "(init & load & warm) -> write{20} -> flush{2,30} -> close [end:log]";
+        ExecutionOrderAutomaton compiled = ExecutionOrderAutomaton.compile(regex, ExecutionOrderAutomaton.Compilation.EAGER);
+        assertTrue(compiled.getTransitionTable().hasRegisters());
+        TransitionTable decoded = PrecompiledTable.decode(PrecompiledTable.encode(compiled.getTransitionTable()));
+        assertTrue(decoded.hasRegisters());
+
+        assertEquals(compiled.getStateCount(), decoded.getStateCount());
+
+        long cursor = TransitionTable.INITIAL_STATE;
+        String[] calls = {"load", "warm", "init"};
+        for (String call : calls) {
+            cursor = decoded.step(cursor, decoded.getSymbols().lookup(call));
+        }
+        assertEquals(TransitionTable.REJECTED, decoded.step(cursor, decoded.getSymbols().lookup("init")));
+        for (int i = 0; i < 20; i++) {
+            cursor = decoded.step(cursor, decoded.getSymbols().lookup("write"));
+        }
+        assertEquals(TransitionTable.REJECTED, decoded.step(cursor, decoded.getSymbols().lookup("write")));
+        for (int i = 0; i < 2; i++) {
+            cursor = decoded.step(cursor, decoded.getSymbols().lookup("flush"));
+        }
+        cursor = decoded.step(cursor, decoded.getSymbols().lookup("close"));
+        assertNotEquals(TransitionTable.REJECTED, cursor);
+        assertEquals("close", decoded.getGraphState(TransitionTable.state(cursor)).getId());
+    }
+
+    @Test
+    public void testInvalidPatternIsACompilationError(@TempDir Path directory) throws IOException {
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(directory, "sample.Broken",
+                "package sample;\n"
+                + "@com.luis.tfg.ExecutionOrder.ExecutionOrder(\"(start & | end)\")\n"
+                + "public class Broken {}\n");
+
+        assertTrue(hasError(diagnostics, "Invalid @ExecutionOrder pattern"), diagnostics.toString());
+        assertFalse(Files.exists(directory.resolve("sample/Broken_ExecutionOrderTable.java")));
+    }
+
+    @Test
+    public void testGeneratedTableIsLoadedForNestedClasses(@TempDir Path directory) throws Exception {
+        String regex = "open -> read{2,} -> close";
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(directory, "sample.Outer",
+                "package sample;\n"
+                + "public class Outer {\n"
+                + "    @com.luis.tfg.ExecutionOrder.ExecutionOrder(\"" + regex + "\")\n"
+                + "    public static class Inner {}\n"
+                + "}\n");
+        assertFalse(diagnostics.stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.ERROR), diagnostics.toString());
+        assertTrue(Files.exists(directory.resolve("sample/Outer_Inner_ExecutionOrderTable.class")));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()},
+                ExecutionOrderProcessorTest.class.getClassLoader())) {
+            TransitionTable table = PrecompiledTable.load("sample.Outer$Inner", loader, regex);
+            assertNotNull(table);
+            assertEquals(PatternCompiler.compile(PatternParser.parse(regex)).getStateCount(), table.getStateCount());
+            assertNull(PrecompiledTable.load("sample.Outer$Inner", loader, "open -> close"));
+        }
+    }
+
+    @Test
+    public void testGeneratedSourceEscapesThePattern() {
+        String source = ExecutionOrderProcessor.source("sample.Quoted_ExecutionOrderTable", "a \"b\" \\ c\nñ",
+                new String[]{"AAAA"});
+        assertTrue(source.startsWith("package sample;"));
+        assertTrue(source.contains("PATTERN = \"a \\\"b\\\" \\\\ c\\n\\u00f1\";"), source);
+        assertTrue(source.contains("public final class Quoted_ExecutionOrderTable"));
+    }
+}
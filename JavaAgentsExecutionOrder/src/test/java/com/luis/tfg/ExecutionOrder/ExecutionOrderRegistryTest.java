@@ -0,0 +1,98 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionOrderRegistryTest {
+
+    @Test
+    public void testTerminalStates() {
+        TransitionTable table = ExecutionOrderAutomaton.compile("(open close)").getTransitionTable();
+        StateMachine stateMachine = new StateMachine(ExecutionOrderAutomaton.compile("(open close)"));
+        assertFalse(table.isTerminal(TransitionTable.INITIAL_STATE));
+        stateMachine.validateTransition("open");
+        stateMachine.validateTransition("close");
+        assertTrue(stateMachine.getAutomaton().getTransitionTable().isTerminal(stateMachine.currentState()));
+
+        // Con llamadas posteriores al final el estado final no es terminal
+        StateMachine postFinal = new StateMachine(ExecutionOrderAutomaton.compile("(open close)[end:log]"));
+        postFinal.validateTransition("open");
+        postFinal.validateTransition("close");
+        assertTrue(postFinal.isInFinalState());
+        assertFalse(postFinal.getAutomaton().getTransitionTable().isTerminal(postFinal.currentState()));
+    }
+
+    @Test
+    public void testCompletedInstancesAreEvicted() {
+        ExecutionOrderStats stats = ExecutionOrderStats.getInstance();
+        Object instance = new Object();
+        ExecutionOrderRegistry.register(instance, "(open close)");
+        int size = ExecutionOrderRegistry.size();
+        long evicted = stats.getEvictedInstances();
+
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
+        stateMachine.validateTransition("open");
+        assertSame(stateMachine, ExecutionOrderRegistry.getStateMachine(instance));
+        stateMachine.validateTransition("close");
+
+        assertNull(ExecutionOrderRegistry.getStateMachine(instance));
+        assertEquals(size - 1, ExecutionOrderRegistry.size());
+        assertEquals(evicted + 1, stats.getEvictedInstances());
+        assertTrue(ProtocolCompletion.complete(instance));
+        // La StateMachine sigue rechazando llamadas a quien la conserve
+        assertThrows(IllegalStateException.class, () -> stateMachine.validateTransition("open"));
+        assertEquals(evicted + 1, stats.getEvictedInstances());
+    }
+
+    @Test
+    public void testWovenInstancesKeepTheirStateMachine() throws Throwable {
+        ExecutionOrderStats stats = ExecutionOrderStats.getInstance();
+        long evicted = stats.getEvictedInstances();
+        long completed = stats.getCompletedInstancesByClass().getOrDefault(EcommerceOrder.class.getName(), 0L);
+        Object order = MethodOrderWeavingTest.weave(EcommerceOrder.class).getConstructor(String.class).newInstance("evict-1");
+        for (String method : new String[] {"addToCart", "checkout", "payment", "confirmation"}) {
+            MethodOrderWeavingTest.call(order, method);
+        }
+
+        // Se cuenta como completada, pero no había nada que quitar del mapa
+        assertEquals(completed + 1, stats.getCompletedInstancesByClass().get(EcommerceOrder.class.getName()));
+        assertEquals(evicted, stats.getEvictedInstances());
+        assertNotNull(ExecutionOrderRegistry.getStateMachine(order));
+        assertThrows(SecurityException.class, () -> MethodOrderWeavingTest.call(order, "addToCart"));
+    }
+
+    @Test
+    public void testRegistrationPrintsCountersInsteadOfTheMap() {
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            ExecutionOrderRegistry.register(new Object(), "(open close)");
+        } finally {
+            System.setOut(console);
+        }
+        assertTrue(output.toString().contains("[INFO] Registry: "), output.toString());
+        assertFalse(output.toString().contains("Current StateMachineMap content"), output.toString());
+    }
+
+    @Test
+    public void testLookupsPrintNothingWithoutDebug() {
+        Object instance = new Object();
+        ExecutionOrderRegistry.register(instance, "(open close)");
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            assertNotNull(ExecutionOrderRegistry.getStateMachine(instance));
+            assertNull(ExecutionOrderRegistry.getStateMachine(new Object()));
+            MethodOrderAdvice.exited(instance, ExecutionOrderRegistry.getStateMachine(instance));
+        } finally {
+            System.setOut(console);
+        }
+        assertEquals("", output.toString());
+    }
+}
@@ -0,0 +1,144 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionOrderSnapshotTest {
+
+    private static final String PATTERN = "(open read{0,} close)";
+
+    @Test
+    public void testExportAndRestore() {
+        Object before = new Object();
+        ExecutionOrderRegistry.register(before, PATTERN);
+        ExecutionOrderRegistry.getStateMachine(before).validateTransition("open");
+        ExecutionOrderRegistry.getStateMachine(before).validateTransition("read");
+        byte[] snapshot = ExecutionOrderSnapshot.export(before);
+        assertEquals(ExecutionOrderSnapshot.SIZE, snapshot.length);
+
+        // La misma instancia tras un reinicio empieza en INITIAL
+        Object after = new Object();
+        ExecutionOrderRegistry.register(after, PATTERN);
+        ExecutionOrderSnapshot.restore(after, snapshot);
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(after);
+        // Tras el autómata mínimo, read vuelve al estado de open
+        assertEquals("open", stateMachine.getCurrentState().getId());
+        stateMachine.validateTransition("close");
+        assertTrue(stateMachine.isInFinalState());
+    }
+
+    @Test
+    public void testSnapshotOfAnotherPatternIsRejected() {
+        Object instance = new Object();
+        ExecutionOrderRegistry.register(instance, "(open close)");
+        byte[] snapshot = ExecutionOrderSnapshot.export(instance);
+
+        Object other = new Object();
+        ExecutionOrderRegistry.register(other, PATTERN);
+        assertThrows(IllegalArgumentException.class, () -> ExecutionOrderSnapshot.restore(other, snapshot));
+        assertThrows(IllegalArgumentException.class, () -> ExecutionOrderSnapshot.restore(other, new byte[3]));
+        assertEquals("INITIAL", ExecutionOrderRegistry.getStateMachine(other).getCurrentState().getId());
+    }
+
+    @Test
+    public void testReleasedInstanceIsExportedAsFinished(@TempDir Path directory) throws IOException {
+        Object before = new Object();
+        ExecutionOrderRegistry.register(before, PATTERN);
+        StateMachine released = ExecutionOrderRegistry.getStateMachine(before);
+        released.validateTransition("open");
+        released.validateTransition("close");
+        // Al llegar al estado terminal el registro la libera
+        assertNull(ExecutionOrderRegistry.getStateMachine(before));
+        byte[] snapshot = ExecutionOrderSnapshot.export(before);
+
+        Object after = new Object();
+        ExecutionOrderRegistry.register(after, PATTERN);
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(after);
+        ExecutionOrderSnapshot.restore(after, snapshot);
+        assertTrue(stateMachine.isInFinalState());
+        assertThrows(IllegalStateException.class, () -> stateMachine.validateTransition("open"));
+        // Y se libera igual que la original
+        assertNull(ExecutionOrderRegistry.getStateMachine(after));
+        assertArrayEquals(snapshot, ExecutionOrderSnapshot.export(after));
+
+        try (MappedCursorStore store = MappedCursorStore.open(directory.resolve("finished.bin"), 1)) {
+            store.save(0, before);
+            StateMachine restored = new StateMachine(ExecutionOrderAutomaton.forPattern(PATTERN));
+            assertTrue(store.restore(0, restored));
+            assertTrue(restored.getAutomaton().getTransitionTable().isTerminal(restored.currentState()));
+
+            // Una tabla perezosa no sabe cuáles son sus estados terminales
+            StateMachine lazy = new StateMachine(
+                    ExecutionOrderAutomaton.compile(PATTERN, ExecutionOrderAutomaton.Compilation.LAZY));
+            assertThrows(IllegalArgumentException.class, () -> store.restore(0, lazy));
+        }
+    }
+
+    @Test
+    public void testUnregisteredInstanceIsNotExported(@TempDir Path directory) throws IOException {
+        // Sin StateMachine y sin haberla liberado el registro: no es un protocolo terminado
+        Object unregistered = new Object();
+        assertThrows(IllegalStateException.class, () -> ExecutionOrderSnapshot.export(unregistered));
+        try (MappedCursorStore store = MappedCursorStore.open(directory.resolve("unregistered.bin"), 1)) {
+            assertThrows(IllegalStateException.class, () -> store.save(0, unregistered));
+            assertFalse(store.restore(0, new StateMachine(ExecutionOrderAutomaton.forPattern(PATTERN))));
+        }
+    }
+
+    @Test
+    public void testFingerprintIsStableAcrossCompilations() {
+        TransitionTable first = ExecutionOrderAutomaton.compile(PATTERN).getTransitionTable();
+        TransitionTable second = ExecutionOrderAutomaton.compile(PATTERN).getTransitionTable();
+        assertEquals(first.fingerprint(), second.fingerprint());
+        assertNotEquals(first.fingerprint(), ExecutionOrderAutomaton.compile("(open close)").getTransitionTable().fingerprint());
+
+        TransitionTable lazy = ExecutionOrderAutomaton.compile(PATTERN, ExecutionOrderAutomaton.Compilation.LAZY)
+                .getTransitionTable();
+        assertThrows(IllegalStateException.class, lazy::fingerprint);
+        assertFalse(first.isValidCursor(TransitionTable.cursor(first.getStateCount(), 0)));
+        assertFalse(first.isValidCursor(TransitionTable.cursor(0, 1)));
+    }
+
+    @Test
+    public void testMappedStoreSurvivesReopening(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("cursors.bin");
+        int count = 200_000;
+        ExecutionOrderAutomaton automaton = ExecutionOrderAutomaton.forPattern(PATTERN);
+        int open = automaton.getTransitionTable().getSymbols().lookup("open");
+
+        long start = System.nanoTime();
+        try (MappedCursorStore store = MappedCursorStore.open(file, count)) {
+            for (int slot = 0; slot < count; slot++) {
+                StateMachine stateMachine = new StateMachine(automaton);
+                if (slot % 2 == 0) {
+                    stateMachine.validateTransition(open);
+                }
+                store.save(slot, stateMachine);
+            }
+            store.clear(count - 1);
+        }
+        long saved = System.nanoTime();
+
+        StateMachine[] restored = new StateMachine[count];
+        try (MappedCursorStore store = MappedCursorStore.open(file, count)) {
+            for (int slot = 0; slot < count - 1; slot++) {
+                restored[slot] = new StateMachine(automaton);
+                assertTrue(store.restore(slot, restored[slot]));
+            }
+            assertFalse(store.restore(count - 1, new StateMachine(automaton)));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.save(count, new StateMachine(automaton)));
+        }
+        long end = System.nanoTime();
+        System.out.println("[INFO] Saved " + count + " cursors in " + (saved - start) / 1_000_000 + " ms, restored in "
+                + (end - saved) / 1_000_000 + " ms");
+
+        assertEquals("open", restored[0].getCurrentState().getId());
+        assertEquals("INITIAL", restored[1].getCurrentState().getId());
+        assertThrows(IOException.class, () -> MappedCursorStore.open(file, count + 1));
+    }
+}
@@ -0,0 +1,81 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionOrderStatsTest {
+
+    private static Object attribute(String name) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.getAttribute(new ObjectName(ExecutionOrderStats.OBJECT_NAME), name);
+    }
+
+    private static Object tabularValue(Object attribute, String key) {
+        CompositeData row = ((TabularData) attribute).get(new Object[] {key});
+        return row != null ? row.get("value") : null;
+    }
+
+    @Test
+    public void testCountersAreExposedThroughJmx() throws Exception {
+        ExecutionOrderStats.registerMBean();
+        // Registrar dos veces no falla
+        ExecutionOrderStats.registerMBean();
+
+        long registered = (Long) attribute("RegisteredInstances");
+        long transitions = (Long) attribute("TransitionCount");
+
+        Object instance = new Object();
+        ExecutionOrderRegistry.register(instance, "(statsOpen statsClose)");
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
+        stateMachine.validateTransition("statsOpen");
+        assertFalse(stateMachine.tryTransition(stateMachine.getAutomaton().getTransitionTable().getSymbols()
+                .lookup("statsOpen")));
+
+        assertEquals(registered + 1, attribute("RegisteredInstances"));
+        assertEquals(transitions + 1, attribute("TransitionCount"));
+        assertEquals(stateMachine.getAutomaton().getStateCount(),
+                tabularValue(attribute("PatternStateCounts"), "(statsOpen statsClose)"));
+        assertTrue((Integer) attribute("CompiledPatternCount") >= 1);
+    }
+
+    @Test
+    public void testViolationsAreCounted() throws Throwable {
+        Object order = MethodOrderWeavingTest.weave(EcommerceOrder.class).getConstructor(String.class).newInstance("stats-1");
+        long violations = ExecutionOrderStats.getInstance().getViolationCount();
+
+        assertThrows(SecurityException.class, () -> MethodOrderWeavingTest.call(order, "payment"));
+        assertEquals(violations + 1, ExecutionOrderStats.getInstance().getViolationCount());
+    }
+
+    @Test
+    public void testReleasedInstancesAreCountedPerClass() {
+        ExecutionOrderStats stats = ExecutionOrderStats.getInstance();
+        String className = StringBuilder.class.getName();
+        long completedBefore = stats.getCompletedInstancesByClass().getOrDefault(className, 0L);
+        long abandonedBefore = stats.getAbandonedInstancesByClass().getOrDefault(className, 0L);
+        Object completed = new StringBuilder("completed");
+        Object abandoned = new StringBuilder("abandoned");
+        ExecutionOrderRegistry.register(completed, "(open close)");
+        ExecutionOrderRegistry.register(abandoned, "(open close)");
+        long open = stats.getOpenInstances();
+        ExecutionOrderRegistry.getStateMachine(completed).validateTransition("open");
+        ExecutionOrderRegistry.getStateMachine(completed).validateTransition("close");
+        ExecutionOrderRegistry.getStateMachine(abandoned).validateTransition("open");
+
+        assertTrue(ProtocolCompletion.complete(completed));
+        assertFalse(ProtocolCompletion.complete(abandoned));
+        // Cerrar otra vez no vuelve a contar la instancia
+        assertFalse(ProtocolCompletion.complete(abandoned));
+
+        assertEquals(completedBefore + 1, stats.getCompletedInstancesByClass().get(className));
+        assertEquals(abandonedBefore + 1, stats.getAbandonedInstancesByClass().get(className));
+        assertEquals(open - 2, stats.getOpenInstances());
+    }
+}
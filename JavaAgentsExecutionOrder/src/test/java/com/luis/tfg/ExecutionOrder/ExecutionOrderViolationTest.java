@@ -0,0 +1,48 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionOrderViolationTest {
+
+    @AfterEach
+    public void restoreStrategy() {
+        ExecutionOrderViolation.setStrategy(ExecutionOrderViolation.Strategy.DETAILED);
+    }
+
+    @Test
+    public void testStacklessRejection() throws Throwable {
+        ExecutionOrderViolation.setStrategy(ExecutionOrderViolation.Strategy.STACKLESS);
+        Object order = MethodOrderWeavingTest.weave(EcommerceOrder.class).getConstructor(String.class).newInstance("stackless-1");
+        MethodOrderWeavingTest.call(order, "addToCart");
+
+        ExecutionOrderViolation violation = assertThrows(ExecutionOrderViolation.class,
+                () -> MethodOrderWeavingTest.call(order, "payment"));
+        assertEquals(0, violation.getStackTrace().length);
+        assertNull(violation.getCause());
+        assertEquals("addToCart", violation.getStateId());
+        assertEquals("payment", violation.getMethodName());
+        assertEquals("[ERROR] Invalid transition from addToCart to payment.", violation.getMessage());
+        // La StateMachine no se ha movido
+        assertEquals("addToCart", ExecutionOrderRegistry.getStateMachine(order).getCurrentState().getId());
+    }
+
+    @Test
+    public void testDetailedRejectionIsTheDefault() throws Throwable {
+        Object order = MethodOrderWeavingTest.weave(EcommerceOrder.class).getConstructor(String.class).newInstance("detailed-1");
+        SecurityException e = assertThrows(SecurityException.class, () -> MethodOrderWeavingTest.call(order, "payment"));
+        assertFalse(e instanceof ExecutionOrderViolation);
+        assertTrue(e.getStackTrace().length > 0);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    public void testAgentArgument() {
+        MethodOrderAgent.configure(MethodOrderAgent.arguments("rejection=stackless"));
+        assertEquals(ExecutionOrderViolation.Strategy.STACKLESS, ExecutionOrderViolation.getStrategy());
+        assertThrows(IllegalArgumentException.class,
+                () -> MethodOrderAgent.configure(MethodOrderAgent.arguments("rejection=cached")));
+    }
+}
@@ -0,0 +1,147 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyTransitionTableTest {
+
+    private static String longSequence(int length) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            regex.append("state").append(i).append(" -> ");
+        }
+        return regex.append("FINAL").toString();
+    }
+
+    @Test
+    public void testOnlyVisitedStatesAreBuilt() {
+        ExecutionOrderAutomaton automaton = ExecutionOrderAutomaton.compile(longSequence(1000),
+                ExecutionOrderAutomaton.Compilation.LAZY);
+        assertEquals(1, automaton.getStateCount());
+
+        StateMachine sm = new StateMachine(automaton);
+        for (int i = 0; i < 10; i++) {
+            sm.validateTransition("state" + i);
+        }
+        assertEquals(11, automaton.getStateCount());
+        assertEquals("state9", sm.getCurrentState().getId());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> sm.validateTransition("state20"));
+        assertEquals("[ERROR] Invalid transition from state9 to state20.", e.getMessage());
+    }
+
+    @Test
+    public void testAutoCompilesLargePatternsLazily() {
+        assertTrue(ExecutionOrderAutomaton.compile(longSequence(1000)).getTransitionTable().isLazy());
+        assertFalse(ExecutionOrderAutomaton.compile("(start process end)").getTransitionTable().isLazy());
+        // Los contadores ya dan una tabla pequeña
+        assertFalse(ExecutionOrderAutomaton.compile("open -> write{100000} -> close",
+                ExecutionOrderAutomaton.Compilation.LAZY).getTransitionTable().isLazy());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        TransitionTable table = PatternCompiler.compile(PatternParser.parse(longSequence(1000)),
+                ExecutionOrderAutomaton.Compilation.LAZY, 4);
+        long cursor = TransitionTable.INITIAL_STATE;
+        for (int i = 0; i < 1000; i++) {
+            cursor = table.step(cursor, table.getSymbols().lookup("state" + i));
+            assertNotEquals(TransitionTable.REJECTED, cursor);
+        }
+        assertTrue(table.isFinal(TransitionTable.state(cursor)));
+        assertTrue(((LazyTransitionTable) table).cachedRowCount() <= 4);
+
+        // Los estados descartados se vuelven a calcular al regresar a ellos
+        TransitionTable loop = PatternCompiler.compile(PatternParser.parse("start -> .* -> end"),
+                ExecutionOrderAutomaton.Compilation.LAZY, 1);
+        long loopCursor = loop.step(TransitionTable.INITIAL_STATE, loop.getSymbols().lookup("start"));
+        for (int i = 0; i < 100; i++) {
+            loopCursor = loop.step(loopCursor, loop.getSymbols().lookup(i % 2 == 0 ? "end" : "other"));
+            assertNotEquals(TransitionTable.REJECTED, loopCursor);
+        }
+        assertEquals(1, ((LazyTransitionTable) loop).cachedRowCount());
+    }
+
+    @Test
+    public void testLazyAcceptsTheSameCallsAsEager() {
+        String[] patterns = {
+            "(start process end)",
+            "((start & process) | middle) -> end -> FINAL",
+            "((a | b) & (c | d)) -> (x .* y) -> z -> FINAL",
+            "(alt & rep{2}) -> end [end:log]",
+            "(start .* (mid{3} | end))",
+            "start -> end [end:+]"
+        };
+        String[] alphabet = {"start", "process", "end", "middle", "a", "b", "c", "d", "x", "y", "z",
+            "alt", "rep", "mid", "log", "other", "FINAL"};
+        Random random = new Random(42);
+        for (String pattern : patterns) {
+            ExecutionOrderAutomaton eager = ExecutionOrderAutomaton.compile(pattern, ExecutionOrderAutomaton.Compilation.EAGER);
+            ExecutionOrderAutomaton lazy = ExecutionOrderAutomaton.compile(pattern, ExecutionOrderAutomaton.Compilation.LAZY);
+            for (int run = 0; run < 200; run++) {
+                StateMachine expected = new StateMachine(eager);
+                StateMachine actual = new StateMachine(lazy);
+                for (int call = 0; call < 8; call++) {
+                    String method = alphabet[random.nextInt(alphabet.length)];
+                    boolean expectedValid = accepts(expected, method);
+                    assertEquals(expectedValid, accepts(actual, method), pattern + " / " + method);
+                    if (!expectedValid) {
+                        break;
+                    }
+                    assertEquals(expected.isInFinalState(), actual.isInFinalState(), pattern);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSharedLazyTableFromManyThreads() throws Exception {
+        String regex = longSequence(300);
+        TransitionTable table = PatternCompiler.compile(PatternParser.parse(regex),
+                ExecutionOrderAutomaton.Compilation.LAZY, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(() -> {
+                    for (int run = 0; run < 20; run++) {
+                        long cursor = TransitionTable.INITIAL_STATE;
+                        for (int i = 0; i < 300; i++) {
+                            cursor = table.step(cursor, table.getSymbols().lookup("state" + i));
+                            if (cursor == TransitionTable.REJECTED) {
+                                return false;
+                            }
+                        }
+                        if (!table.isFinal(TransitionTable.state(cursor))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // INITIAL, un estado por método y FINAL
+        assertEquals(302, table.getStateCount());
+    }
+
+    private static boolean accepts(StateMachine sm, String method) {
+        try {
+            return sm.validateTransition(method);
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+}
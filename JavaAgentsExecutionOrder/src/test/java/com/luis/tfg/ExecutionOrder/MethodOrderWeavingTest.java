@@ -0,0 +1,271 @@
+package com.luis.tfg.ExecutionOrder;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.ClassFileLocator;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Teje {@link EcommerceOrder} con {@link MethodOrderAgent#instrument} sin necesidad de
+ * arrancar la JVM con el agente y comprueba el código resultante.
+ */
+public class MethodOrderWeavingTest {
+
+    /**
+     * Rebasa la clase (como hace AgentBuilder por defecto) con los advice del agente y la carga en un cargador hijo.
+     */
+    static Class<?> weave(Class<?> type) {
+        return MethodOrderAgent.instrument(
+                        new ByteBuddy().rebase(type, ClassFileLocator.ForClassLoader.of(type.getClassLoader())),
+                        TypeDescription.ForLoadedType.of(type))
+                .make()
+                .load(type.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+                .getLoaded();
+    }
+
+    static void call(Object instance, String method) throws Throwable {
+        try {
+            instance.getClass().getMethod(method).invoke(instance);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testWovenClassFollowsProtocol() throws Throwable {
+        Class<?> woven = weave(EcommerceOrder.class);
+        assertNotSame(EcommerceOrder.class, woven);
+
+        Object order = woven.getConstructor(String.class).newInstance("woven-1");
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(order);
+        assertNotNull(stateMachine);
+
+        call(order, "addToCart");
+        call(order, "checkout");
+        call(order, "payment");
+        call(order, "confirmation");
+        assertTrue(stateMachine.isInFinalState());
+    }
+
+    @Test
+    public void testWovenClassRejectsWrongOrder() throws Throwable {
+        Object order = weave(EcommerceOrder.class).getConstructor(String.class).newInstance("woven-2");
+
+        call(order, "addToCart");
+        SecurityException e = assertThrows(SecurityException.class, () -> call(order, "payment"));
+        assertEquals("[ERROR] Invalid transition from addToCart to payment.", e.getCause().getMessage());
+    }
+
+    @Test
+    public void testStateMachineLivesInInjectedField() throws Throwable {
+        Class<?> woven = weave(EcommerceOrder.class);
+        Object order = woven.getConstructor(String.class).newInstance("woven-3");
+
+        assertTrue(order instanceof ExecutionOrderTracked);
+        StateMachine stateMachine = ((ExecutionOrderTracked) order).getExecutionOrderStateMachine();
+        assertNotNull(stateMachine);
+        assertSame(stateMachine, ExecutionOrderRegistry.getStateMachine(order));
+
+        java.lang.reflect.Field field = woven.getDeclaredField(ExecutionOrderTracked.STATE_MACHINE_FIELD);
+        assertTrue(field.isSynthetic());
+        assertTrue(java.lang.reflect.Modifier.isTransient(field.getModifiers()));
+
+        // Dos instancias iguales según hashCode no comparten cursor
+        Object other = woven.getConstructor(String.class).newInstance("woven-3");
+        call(order, "addToCart");
+        call(other, "addToCart");
+        assertNotSame(stateMachine, ExecutionOrderRegistry.getStateMachine(other));
+    }
+
+    @Test
+    public void testSymbolsAreResolvedAtWeaveTime() {
+        SymbolTable symbols = MethodOrderAgent.symbolsFor(TypeDescription.ForLoadedType.of(EcommerceOrder.class));
+        SymbolTable expected = ExecutionOrderAutomaton.forPattern("(addToCart checkout payment confirmation)")
+                .getTransitionTable().getSymbols();
+
+        assertSame(expected, symbols);
+        assertNotEquals(SymbolTable.UNKNOWN, symbols.lookup("checkout"));
+    }
+
+    @ExecutionOrder(value = "(open read close)", weave = ExecutionOrder.Weave.PROTOCOL)
+    public static class ProtocolFile {
+        public void open() {
+        }
+
+        public void read() {
+        }
+
+        public void close() {
+        }
+
+        public int size() {
+            return 0;
+        }
+    }
+
+    @ExecutionOrder(value = "(open .* close)", weave = ExecutionOrder.Weave.PROTOCOL)
+    public static class WildcardFile extends ProtocolFile {
+    }
+
+    @ExecutionOrder(value = "(open .* close)", weave = ExecutionOrder.Weave.PROTOCOL_WITH_WILDCARDS)
+    public static class WildcardProtocolFile extends ProtocolFile {
+    }
+
+    @Test
+    public void testProtocolWeavingSkipsOtherMethods() throws Throwable {
+        Object file = weave(ProtocolFile.class).getConstructor().newInstance();
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(file);
+
+        call(file, "size");
+        call(file, "open");
+        call(file, "size");
+        assertEquals("open", stateMachine.getCurrentState().getId());
+        SecurityException e = assertThrows(SecurityException.class, () -> call(file, "close"));
+        assertEquals("[ERROR] Invalid transition from open to close.", e.getCause().getMessage());
+        call(file, "read");
+        call(file, "close");
+        call(file, "size");
+        assertTrue(stateMachine.isInFinalState());
+    }
+
+    @Test
+    public void testWildcardPatternsNeedExplicitProtocolWeaving() throws Throwable {
+        assertFalse(MethodOrderAgent.weavesProtocolOnly(TypeDescription.ForLoadedType.of(WildcardFile.class)));
+        assertTrue(MethodOrderAgent.weavesProtocolOnly(TypeDescription.ForLoadedType.of(WildcardProtocolFile.class)));
+        assertFalse(MethodOrderAgent.weavesProtocolOnly(TypeDescription.ForLoadedType.of(EcommerceOrder.class)));
+
+        // Tejidos todos los métodos, size fuera del comodín es un error
+        Object wildcard = weave(WildcardFile.class).getConstructor().newInstance();
+        assertThrows(SecurityException.class, () -> call(wildcard, "size"));
+
+        // Sólo el protocolo: size no se comprueba nunca
+        Object protocol = weave(WildcardProtocolFile.class).getConstructor().newInstance();
+        call(protocol, "size");
+        call(protocol, "open");
+        call(protocol, "close");
+        call(protocol, "size");
+        assertTrue(ExecutionOrderRegistry.getStateMachine(protocol).isInFinalState());
+    }
+
+    @ExecutionOrder("(open read{0,} close)")
+    public static class TrackedFile {
+        public void open() {
+        }
+
+        public void close() {
+        }
+    }
+
+    @ExecutionOrder("(open read{0,} close)")
+    public static class TrackedReader extends TrackedFile {
+        public void read() {
+        }
+    }
+
+    @ExecutionOrder("(open close)")
+    public static class TrackedWriter extends TrackedFile {
+    }
+
+    /**
+     * Carga las clases indicadas pasándolas por el transformador del agente, como haría la JVM con el
+     * agente instalado; el resto se delega en el cargador padre.
+     */
+    static final class TransformingClassLoader extends ClassLoader {
+        private final ClassFileTransformer transformer = MethodOrderAgent.transformer(Collections.emptyList());
+        private final Set<String> names = new HashSet<>();
+
+        TransformingClassLoader(Class<?>... types) {
+            super(MethodOrderWeavingTest.class.getClassLoader());
+            for (Class<?> type : types) {
+                names.add(type.getName());
+            }
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!names.contains(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                if (type == null) {
+                    String internalName = name.replace('.', '/');
+                    try (InputStream in = getResourceAsStream(internalName + ".class")) {
+                        byte[] classFile = in.readAllBytes();
+                        byte[] transformed = transformer.transform(this, internalName, null, null, classFile);
+                        byte[] bytes = transformed != null ? transformed : classFile;
+                        type = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException | IllegalClassFormatException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                return type;
+            }
+        }
+    }
+
+    @Test
+    public void testAnnotatedHierarchySharesOneStateMachineField() throws Throwable {
+        ClassLoader loader = new TransformingClassLoader(TrackedFile.class, TrackedReader.class);
+        Class<?> readerType = loader.loadClass(TrackedReader.class.getName());
+        Class<?> fileType = readerType.getSuperclass();
+        assertSame(loader, fileType.getClassLoader());
+
+        // Sólo la superclase declara el campo y el accesor
+        fileType.getDeclaredField(ExecutionOrderTracked.STATE_MACHINE_FIELD);
+        assertThrows(NoSuchFieldException.class, () -> readerType.getDeclaredField(ExecutionOrderTracked.STATE_MACHINE_FIELD));
+        assertFalse(Arrays.asList(readerType.getInterfaces()).contains(ExecutionOrderTracked.class));
+
+        Object reader = readerType.getConstructor().newInstance();
+        StateMachine stateMachine = ((ExecutionOrderTracked) reader).getExecutionOrderStateMachine();
+        assertNotNull(stateMachine);
+
+        // Métodos heredados y propios avanzan la misma StateMachine
+        call(reader, "open");
+        call(reader, "read");
+        call(reader, "read");
+        call(reader, "close");
+        assertTrue(stateMachine.isInFinalState());
+
+        Object other = readerType.getConstructor().newInstance();
+        SecurityException e = assertThrows(SecurityException.class, () -> call(other, "read"));
+        assertEquals("[ERROR] Invalid transition from INITIAL to read.", e.getCause().getMessage());
+
+        // Las instancias de la superclase siguen funcionando
+        Object file = fileType.getConstructor().newInstance();
+        call(file, "open");
+        call(file, "close");
+        assertTrue(((ExecutionOrderTracked) file).getExecutionOrderStateMachine().isInFinalState());
+    }
+
+    @Test
+    public void testSuperclassAnnotationGovernsTheHierarchy() throws Throwable {
+        assertEquals(TypeDescription.ForLoadedType.of(TrackedFile.class),
+                MethodOrderAgent.protocolType(TypeDescription.ForLoadedType.of(TrackedFile.class)));
+        // Una superclase cargada sin tejer no cuenta: la subclase declara su propio campo
+        assertEquals(TypeDescription.ForLoadedType.of(TrackedWriter.class),
+                MethodOrderAgent.protocolType(TypeDescription.ForLoadedType.of(TrackedWriter.class)));
+
+        ClassLoader loader = new TransformingClassLoader(TrackedFile.class, TrackedWriter.class);
+        Object writer = loader.loadClass(TrackedWriter.class.getName()).getConstructor().newInstance();
+        StateMachine stateMachine = ((ExecutionOrderTracked) writer).getExecutionOrderStateMachine();
+        assertEquals("(open read{0,} close)", stateMachine.getAutomaton().getRegex());
+
+        call(writer, "open");
+        call(writer, "close");
+        assertTrue(stateMachine.isInFinalState());
+    }
+}
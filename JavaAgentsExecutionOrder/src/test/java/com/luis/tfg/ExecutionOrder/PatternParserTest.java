@@ -0,0 +1,70 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatternParserTest {
+
+    private static String parse(String regex) {
+        return PatternParser.parse(regex).body.toString();
+    }
+
+    private static void assertInvalid(String regex) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> PatternParser.parse(regex),
+                "Expected '" + regex + "' to be rejected");
+        assertTrue(e.getMessage().contains("Invalid"), e.getMessage());
+    }
+
+    @Test
+    public void testArrowAndWhitespaceAreSequences() {
+        assertEquals("(start process end)", parse("(start process end)"));
+        assertEquals("(start process end)", parse("start -> process -> end"));
+        assertEquals("(x .* y)", parse("(x .* y)"));
+        // También antes de las llaves de una repetición
+        assertEquals("(a{3} b)", parse("a {3} b"));
+        assertEquals("((a b){2,} c)", parse("(a b) \t{2,} -> c"));
+    }
+
+    @Test
+    public void testPrecedence() {
+        // -> separa operandos de | y &, la yuxtaposición no
+        assertEquals("((a | b) c)", parse("a | b -> c"));
+        assertEquals("(a | (b c))", parse("a | b c"));
+        assertEquals("((a & b) | c)", parse("a & b | c"));
+        assertEquals("(a & b & (c d))", parse("a & b & c d"));
+        assertEquals("(rep{2} end)", parse("rep{2} -> end"));
+        assertEquals("((rep{2,5} rep{3,}) end)", parse("rep{2, 5} rep{3,} -> end"));
+    }
+
+    @Test
+    public void testTrailingFinalIsRemoved() {
+        assertEquals("((start process end) ())", parse("(start process end -> FINAL)"));
+        assertEquals("(((a | b) & c) d ())", parse("((a | b) & c) -> d -> FINAL"));
+        assertInvalid("start -> FINAL -> end");
+    }
+
+    @Test
+    public void testSpecialTransitions() {
+        assertEquals(Arrays.asList("fun1", "fun2"), PatternParser.parse("start -> end [end:fun1, fun2]").postFinalCalls);
+        assertEquals(Arrays.asList("+"), PatternParser.parse("start -> end [end:+]").postFinalCalls);
+        assertNull(PatternParser.parse("start -> end").postFinalCalls);
+        assertInvalid("start -> end [fun1]");
+        assertInvalid("start -> end [end:]");
+    }
+
+    @Test
+    public void testInvalidPatterns() {
+        assertInvalid("");
+        assertInvalid("(start & (a | )) -> end");
+        assertInvalid("(start & | end)");
+        assertInvalid("(start process");
+        assertInvalid("(repeat){x} -> end");
+        assertInvalid("(repeat){3,2} -> end");
+        assertInvalid("(repeat){,2} -> end");
+        assertInvalid("start -> ");
+        assertInvalid("start ? end");
+    }
+}
@@ -0,0 +1,87 @@
+package com.luis.tfg.ExecutionOrder;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.ClassFileLocator;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProtocolCompletionTest {
+
+    private static Object trackedInstance(String regex) {
+        Object instance = new Object();
+        ExecutionOrderRegistry.register(instance, regex);
+        ProtocolCompletion.track(instance, ExecutionOrderRegistry.getStateMachine(instance));
+        return instance;
+    }
+
+    @Test
+    public void testCloseHookReportsIncompleteProtocolOnce() {
+        Object instance = trackedInstance("(open read close)");
+        ExecutionOrderRegistry.getStateMachine(instance).validateTransition("open");
+
+        long before = ProtocolCompletion.incompleteCount();
+        assertFalse(ProtocolCompletion.complete(instance));
+        assertEquals(before + 1, ProtocolCompletion.incompleteCount());
+        // La comprobación pendiente ya se ha ejecutado
+        assertFalse(ProtocolCompletion.complete(instance));
+        assertEquals(before + 1, ProtocolCompletion.incompleteCount());
+    }
+
+    @Test
+    public void testCompletedProtocolIsNotReported() {
+        Object instance = trackedInstance("(open close)");
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(instance);
+        stateMachine.validateTransition("open");
+        stateMachine.validateTransition("close");
+
+        long before = ProtocolCompletion.incompleteCount();
+        assertTrue(ProtocolCompletion.complete(instance));
+        assertEquals(before, ProtocolCompletion.incompleteCount());
+    }
+
+    @Test
+    public void testAbandonedInstanceIsReportedAfterCollection() throws InterruptedException {
+        long before = ProtocolCompletion.incompleteCount();
+        for (int i = 0; i < 10; i++) {
+            ExecutionOrderRegistry.getStateMachine(trackedInstance("(open read close)")).validateTransition("open");
+        }
+        trackedInstance("(open close)");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (ProtocolCompletion.incompleteCount() < before + 11 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(before + 11, ProtocolCompletion.incompleteCount());
+    }
+
+    @Test
+    public void testCleanerModeWeavesNoExitAdvice() throws Throwable {
+        Class<?> woven = MethodOrderAgent.instrument(
+                        new ByteBuddy().rebase(EcommerceOrder.class,
+                                ClassFileLocator.ForClassLoader.of(EcommerceOrder.class.getClassLoader())),
+                        TypeDescription.ForLoadedType.of(EcommerceOrder.class), null, ProtocolCompletion.Mode.CLEANER)
+                .make()
+                .load(EcommerceOrder.class.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+                .getLoaded();
+        Object order = woven.getConstructor(String.class).newInstance("cleaner-1");
+
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            MethodOrderWeavingTest.call(order, "addToCart");
+            assertThrows(SecurityException.class, () -> MethodOrderWeavingTest.call(order, "payment"));
+        } finally {
+            System.setOut(console);
+        }
+        assertFalse(output.toString().contains("Exiting method"), output.toString());
+        assertEquals("addToCart", ExecutionOrderRegistry.getStateMachine(order).getCurrentState().getId());
+    }
+}
@@ -0,0 +1,96 @@
+package com.luis.tfg.ExecutionOrder;
+
+import net.bytebuddy.description.type.TypeDescription;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReentrancyGuardTest {
+
+    @ExecutionOrder("(open write close)")
+    public static class Document {
+        public void open() {
+        }
+
+        public void write() {
+            flush();
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+            write();
+        }
+
+        public void fail() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @ExecutionOrder(value = "(open write close)", reentrancy = ExecutionOrder.Reentrancy.OUTERMOST)
+    public static class OutermostDocument extends Document {
+    }
+
+    @ExecutionOrder(value = "(open .* close)", reentrancy = ExecutionOrder.Reentrancy.OUTERMOST)
+    public static class FailingDocument extends Document {
+    }
+
+    @Test
+    public void testNestedCallsAreCountedByDefault() throws Throwable {
+        Object document = MethodOrderWeavingTest.weave(Document.class).getConstructor().newInstance();
+        MethodOrderWeavingTest.call(document, "open");
+        // flush, llamado desde write, no está en el patrón
+        assertThrows(SecurityException.class, () -> MethodOrderWeavingTest.call(document, "write"));
+    }
+
+    @Test
+    public void testOnlyOutermostCallsAdvanceTheProtocol() throws Throwable {
+        assertTrue(MethodOrderAgent.countsOutermostOnly(TypeDescription.ForLoadedType.of(OutermostDocument.class)));
+        Object document = MethodOrderWeavingTest.weave(OutermostDocument.class).getConstructor().newInstance();
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(document);
+
+        // Rechazada en la llamada más externa: no queda abierta
+        assertThrows(SecurityException.class, () -> MethodOrderWeavingTest.call(document, "write"));
+        assertEquals(0, ReentrancyGuard.depth(stateMachine));
+
+        MethodOrderWeavingTest.call(document, "open");
+        MethodOrderWeavingTest.call(document, "write");
+        MethodOrderWeavingTest.call(document, "close");
+        assertTrue(stateMachine.isInFinalState());
+        assertEquals(0, ReentrancyGuard.depth(stateMachine));
+    }
+
+    @Test
+    public void testExceptionsCloseTheCall() throws Throwable {
+        Object document = MethodOrderWeavingTest.weave(FailingDocument.class).getConstructor().newInstance();
+        StateMachine stateMachine = ExecutionOrderRegistry.getStateMachine(document);
+
+        MethodOrderWeavingTest.call(document, "open");
+        assertThrows(UnsupportedOperationException.class, () -> MethodOrderWeavingTest.call(document, "fail"));
+        assertEquals(0, ReentrancyGuard.depth(stateMachine));
+        MethodOrderWeavingTest.call(document, "close");
+        assertTrue(stateMachine.isInFinalState());
+    }
+
+    @Test
+    public void testDepthIsPerInstance() {
+        StateMachine first = new StateMachine("(open close)");
+        StateMachine second = new StateMachine("(open close)");
+        int open = first.getAutomaton().getTransitionTable().getSymbols().lookup("open");
+
+        assertTrue(ReentrancyGuard.enter(first, open));
+        // Otra instancia dentro de la primera sí avanza
+        assertTrue(ReentrancyGuard.enter(second, open));
+        assertEquals("open", second.getCurrentState().getId());
+        // Anidada en la primera: no avanza aunque open ya no esté permitido
+        assertTrue(ReentrancyGuard.enter(first, open));
+        assertEquals(2, ReentrancyGuard.depth(first));
+
+        assertFalse(ReentrancyGuard.exit(first));
+        assertTrue(ReentrancyGuard.exit(second));
+        assertTrue(ReentrancyGuard.exit(first));
+        assertFalse(ReentrancyGuard.exit(first));
+        assertEquals(0, ReentrancyGuard.depth(first));
+    }
+}
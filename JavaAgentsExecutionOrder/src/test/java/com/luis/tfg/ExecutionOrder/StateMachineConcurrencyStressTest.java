@@ -0,0 +1,141 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateMachineConcurrencyStressTest {
+
+    private static final int TICKS = 2000;
+    private static final String TICK_PATTERN = "(tick){" + TICKS + "} -> end";
+
+    /**
+     * Varios hilos llaman a tick sobre la misma instancia. Con el cursor concurrente no se pierde
+     * ninguna transición: se aceptan exactamente las repeticiones que permite el patrón.
+     */
+    @Test
+    public void testNoTransitionIsLostAcrossThreads() throws InterruptedException {
+        StateMachine sm = new StateMachine(TICK_PATTERN, StateMachine.Engine.CONCURRENT);
+        int symbol = sm.getAutomaton().getTransitionTable().getSymbols().lookup("tick");
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        AtomicInteger accepted = new AtomicInteger();
+
+        runConcurrently(threads, () -> {
+            try {
+                while (true) {
+                    sm.validateTransition(symbol);
+                    accepted.incrementAndGet();
+                }
+            } catch (IllegalStateException e) {
+                // Repeticiones agotadas
+            }
+        });
+
+        assertEquals(TICKS, accepted.get(), "Every accepted tick must advance the shared state exactly once");
+        assertTrue(sm.validateTransition("end"), "end should be valid after the last tick");
+        assertTrue(sm.isInFinalState());
+    }
+
+    @Test
+    public void testConcurrentEngineMatchesTableEngine() {
+        String[] methods = {"start", "process", "end", "FINAL", "start"};
+        StateMachine table = new StateMachine("(start process end)", StateMachine.Engine.TABLE);
+        StateMachine concurrent = new StateMachine("(start process end)", StateMachine.Engine.CONCURRENT);
+
+        for (String method : methods) {
+            String expected = outcome(table, method);
+            assertEquals(expected, outcome(concurrent, method), "Different outcome for '" + method + "'");
+            assertEquals(table.getCurrentState().getId(), concurrent.getCurrentState().getId());
+            assertEquals(table.isInFinalState(), concurrent.isInFinalState());
+        }
+    }
+
+    /**
+     * Mide el rendimiento con 1..N hilos, cada uno con su propia instancia (escalado) y todos sobre
+     * la misma instancia (contención en el CAS). Sólo informa, no impone umbrales.
+     */
+    @Test
+    public void testThroughputAcrossThreads() throws InterruptedException {
+        ExecutionOrderAutomaton automaton = ExecutionOrderAutomaton.forPattern(TICK_PATTERN);
+        int symbol = automaton.getTransitionTable().getSymbols().lookup("tick");
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double perInstance = throughput(threads, 200, () -> {
+                StateMachine own = new StateMachine(automaton, StateMachine.Engine.CONCURRENT);
+                for (int i = 0; i < TICKS; i++) {
+                    own.validateTransition(symbol);
+                }
+                return TICKS;
+            });
+
+            StateMachine[] shared = {new StateMachine(automaton, StateMachine.Engine.CONCURRENT)};
+            double sharedThroughput = throughput(threads, 200, () -> {
+                int done = 0;
+                try {
+                    for (int i = 0; i < TICKS; i++) {
+                        shared[0].validateTransition(symbol);
+                        done++;
+                    }
+                } catch (IllegalStateException e) {
+                    shared[0] = new StateMachine(automaton, StateMachine.Engine.CONCURRENT);
+                }
+                return done;
+            });
+
+            System.out.printf("[BENCH] %2d threads: %,.0f transitions/s per-instance, %,.0f transitions/s shared%n",
+                    threads, perInstance, sharedThroughput);
+        }
+    }
+
+    private interface Batch {
+        int run();
+    }
+
+    private static double throughput(int threads, int batches, Batch batch) throws InterruptedException {
+        LongAdder transitions = new LongAdder();
+        long start = System.nanoTime();
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < batches; i++) {
+                transitions.add(batch.run());
+            }
+        });
+        return transitions.sum() * 1_000_000_000.0 / (System.nanoTime() - start);
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        ready.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private static String outcome(StateMachine sm, String method) {
+        try {
+            return String.valueOf(sm.validateTransition(method));
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+}
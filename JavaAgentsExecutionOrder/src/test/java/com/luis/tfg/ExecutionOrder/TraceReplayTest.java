@@ -0,0 +1,87 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraceReplayTest {
+
+    private static final String PATTERN = "(open read{0,} close)";
+
+    @Test
+    public void testViolatingSequencesAreReported() throws IOException {
+        String traces = "# cabecera\n"
+                + "open read read close\n"
+                + "\n"
+                + "open, close\n"
+                + "open close read\n"
+                + "read close\n"
+                + "open read\n"
+                + "  \t# comentario sangrado\n";
+
+        TraceReplay.Report report = new TraceReplay(PATTERN).replay(new StringReader(traces));
+
+        assertEquals(5, report.getSequenceCount());
+        assertEquals(3, report.getViolationCount());
+        List<TraceReplay.Violation> violations = report.getViolations();
+        assertEquals(5, violations.get(0).getLineNumber());
+        assertEquals(2, violations.get(0).getPosition());
+        assertEquals("read", violations.get(0).getMethodName());
+        assertEquals(6, violations.get(1).getLineNumber());
+        assertEquals(0, violations.get(1).getPosition());
+        // Secuencia incompleta
+        assertEquals(7, violations.get(2).getLineNumber());
+        assertNull(violations.get(2).getMethodName());
+        assertTrue(violations.get(2).getMessage().contains("non-final"), violations.get(2).getMessage());
+    }
+
+    @Test
+    public void testLargeFileIsReplayedInParallel(@TempDir Path directory) throws IOException {
+        Path traceFile = directory.resolve("traces.txt");
+        int sequences = TraceReplay.BATCH_SIZE * 3 + 17;
+        try (BufferedWriter writer = Files.newBufferedWriter(traceFile)) {
+            for (int i = 0; i < sequences; i++) {
+                // Una de cada 1000 secuencias cierra dos veces
+                writer.write(i % 1000 == 999 ? "open read close close\n" : "open read read close\n");
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TraceReplay replay = new TraceReplay(ExecutionOrderAutomaton.forPattern(PATTERN), pool, 10);
+            TraceReplay.Report report = replay.replay(traceFile);
+
+            assertEquals(sequences, report.getSequenceCount());
+            assertEquals(sequences / 1000, report.getViolationCount());
+            assertEquals(10, report.getViolations().size());
+            long previous = 0;
+            for (TraceReplay.Violation violation : report.getViolations()) {
+                assertEquals(0, violation.getLineNumber() % 1000);
+                assertTrue(violation.getLineNumber() > previous);
+                previous = violation.getLineNumber();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCommandLineExitCodes(@TempDir Path directory) throws IOException {
+        Path valid = Files.write(directory.resolve("valid.txt"), List.of("open close", "open read close"));
+        Path invalid = Files.write(directory.resolve("invalid.txt"), List.of("open close", "close"));
+
+        assertEquals(0, TraceReplay.run(new String[] {PATTERN, valid.toString(), "--parallelism", "2"}));
+        assertEquals(1, TraceReplay.run(new String[] {PATTERN, invalid.toString()}));
+        assertEquals(2, TraceReplay.run(new String[] {PATTERN}));
+        assertEquals(2, TraceReplay.run(new String[] {PATTERN, directory.resolve("missing.txt").toString()}));
+    }
+}
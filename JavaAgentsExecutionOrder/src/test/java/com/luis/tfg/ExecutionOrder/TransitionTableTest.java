@@ -0,0 +1,367 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransitionTableTest {
+
+    private static TransitionTable compile(String regex) {
+        return ExecutionOrderAutomaton.compile(regex).getTransitionTable();
+    }
+
+    /**
+     * Recorre la secuencia sobre una StateMachine nueva y devuelve si se aceptan todas las llamadas.
+     */
+    private static boolean accepts(String regex, String... methods) {
+        StateMachine sm = new StateMachine(regex);
+        try {
+            for (String method : methods) {
+                sm.validateTransition(method);
+            }
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testLinearSequenceIsMinimal() {
+        TransitionTable table = compile("(start process end)");
+
+        // INITIAL, start, process, end y FINAL
+        assertEquals(5, table.getStateCount());
+        assertEquals("INITIAL", table.getGraphState(TransitionTable.INITIAL_STATE).getId());
+        assertTrue(accepts("(start process end)", "start", "process", "end", "FINAL"));
+        assertFalse(accepts("(start process end)", "start", "end"));
+    }
+
+    @Test
+    public void testEquivalentBranchesAreMerged() {
+        // Tras start o process queda lo mismo por hacer, así que es un único estado
+        TransitionTable table = compile("(start | process) -> end");
+        assertEquals(4, table.getStateCount());
+
+        SymbolTable symbols = table.getSymbols();
+        int afterStart = table.next(TransitionTable.INITIAL_STATE, symbols.lookup("start"));
+        int afterProcess = table.next(TransitionTable.INITIAL_STATE, symbols.lookup("process"));
+        assertEquals(afterStart, afterProcess);
+        assertEquals("start|process", table.getGraphState(afterStart).getId());
+    }
+
+    @Test
+    public void testCompilationIsDeterministic() {
+        TransitionTable first = compile("((start & process) | middle) -> end -> FINAL");
+        TransitionTable second = compile("((start & process) | middle) -> end -> FINAL");
+
+        assertEquals(first.getStateCount(), second.getStateCount());
+        for (int state = 0; state < first.getStateCount(); state++) {
+            assertEquals(first.getGraphState(state).getId(), second.getGraphState(state).getId());
+            for (int symbol = 0; symbol < first.getSymbols().size(); symbol++) {
+                assertEquals(first.next(state, symbol), second.next(state, symbol));
+            }
+        }
+    }
+
+    @Test
+    public void testInterleavingAcceptsBothOrders() {
+        assertTrue(accepts("(start & process) -> end", "start", "process", "end"));
+        assertTrue(accepts("(start & process) -> end", "process", "start", "end"));
+        assertFalse(accepts("(start & process) -> end", "start", "end"));
+        assertFalse(accepts("(start & process) -> end", "start", "start"));
+
+        // Los operandos de & pueden ser secuencias, que se entrelazan
+        assertTrue(accepts("(alt & rep{2}) -> end", "rep", "alt", "rep", "end"));
+        assertFalse(accepts("(alt & rep{2}) -> end", "rep", "alt", "end"));
+    }
+
+    @Test
+    public void testManyOperandInterleavingUsesAMask() {
+        String regex = "(login & cart & address & shipping & coupon & currency) -> pay";
+        TransitionTable table = compile(regex);
+        assertTrue(table.hasRegisters());
+        // INITIAL, todos los operandos llamados, pay y FINAL
+        assertEquals(4, table.getStateCount());
+
+        assertTrue(accepts(regex, "currency", "login", "coupon", "cart", "shipping", "address", "pay"));
+        assertTrue(accepts(regex, "login", "cart", "address", "shipping", "coupon", "currency", "pay", "FINAL"));
+        assertFalse(accepts(regex, "login", "cart", "address", "shipping", "coupon", "pay"));
+
+        StateMachine sm = new StateMachine(regex);
+        sm.validateTransition("cart");
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> sm.validateTransition("cart"));
+        assertEquals("[ERROR] Invalid transition from INITIAL to cart.", e.getMessage());
+    }
+
+    @Test
+    public void testManyOperandInterleavingOfSequences() {
+        // Operandos que no son un único método: producto de autómatas, también con más de dos
+        String regex = "(a b) & c & (d e) -> end";
+        assertTrue(accepts(regex, "d", "a", "c", "e", "b", "end"));
+        assertTrue(accepts(regex, "c", "a", "b", "d", "e", "end"));
+        assertFalse(accepts(regex, "b", "a", "c", "d", "e", "end"));
+        assertFalse(accepts(regex, "a", "b", "c", "d", "end"));
+    }
+
+    @Test
+    public void testOversizedInterleavingIsRejected() {
+        // Dentro de un & las repeticiones se expanden y el producto multiplica los tamaños
+        String regex = "(a{100} b) & (c{100} d) & (e{100} f)";
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> compile(regex));
+        assertTrue(e.getMessage().startsWith("[ERROR] Pattern too large"), e.getMessage());
+        assertTrue(e.getMessage().contains("needs more than " + PatternCompiler.MAX_NFA_STATES), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new StateMachine(regex));
+
+        assertTrue(accepts("(a{100} b) & (c{100} d)", "c", "a"));
+    }
+
+    @Test
+    public void testOversizedDeterministicTableFallsBackToLazy() {
+        // AFN pequeño cuya construcción de subconjuntos crece de forma exponencial
+        String regex = ".* -> ((c){11} & (c | b b) & (d -> (d & b & a & a)))";
+        TransitionTable table = ExecutionOrderAutomaton.compile(regex, ExecutionOrderAutomaton.Compilation.EAGER)
+                .getTransitionTable();
+        assertTrue(table.isLazy());
+        StateMachine stateMachine = new StateMachine(ExecutionOrderAutomaton.compile(regex,
+                ExecutionOrderAutomaton.Compilation.EAGER));
+        for (String method : new String[] {"x", "c", "d", "b", "b", "d"}) {
+            stateMachine.validateTransition(method);
+        }
+
+        // Con un contador no se puede compilar de forma perezosa
+        String counted = "x{100} -> " + regex;
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ExecutionOrderAutomaton.compile(counted, ExecutionOrderAutomaton.Compilation.EAGER));
+        assertTrue(e.getMessage().contains("needs more than " + PatternCompiler.MAX_DFA_STATES), e.getMessage());
+    }
+
+    @Test
+    public void testOversizedExpansionIsRejected() {
+        // Sin contador posible, x{n} se expande en n copias
+        for (String regex : new String[] {".* x{5000000}", "(a b){999999999}", "(a | b){40000,50000}"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> compile(regex));
+            assertTrue(e.getMessage().startsWith("[ERROR] Pattern too large: expanding"), e.getMessage());
+            assertTrue(e.getMessage().contains("needs more than " + PatternCompiler.MAX_NFA_STATES), e.getMessage());
+        }
+
+        // Por debajo del límite se sigue expandiendo
+        assertTrue(accepts("(a b){1000} c", "a", "b", "a"));
+        assertFalse(accepts("(a b){1000} c", "a", "b", "c"));
+    }
+
+    @Test
+    public void testMaskInsideAlternationAndAfterCounter() {
+        String regex = "((start & process & check) | middle) -> end";
+        assertTrue(accepts(regex, "check", "start", "process", "end"));
+        assertTrue(accepts(regex, "middle", "end"));
+        assertFalse(accepts(regex, "start", "middle"));
+
+        String[] calls = new String[24];
+        java.util.Arrays.fill(calls, 1, 21, "write");
+        calls[0] = "open";
+        calls[21] = "close";
+        calls[22] = "sync";
+        calls[23] = "end";
+        assertTrue(accepts("open -> write{20} -> (close & sync) -> end", calls));
+    }
+
+    @Test
+    public void testRepetition() {
+        assertTrue(accepts("(repeat){2} -> end", "repeat", "repeat", "end"));
+        assertFalse(accepts("(repeat){2} -> end", "repeat", "end"));
+        assertFalse(accepts("(repeat){2} -> end", "repeat", "repeat", "repeat"));
+    }
+
+    @Test
+    public void testRepetitionRanges() {
+        assertTrue(accepts("(repeat){2,3} -> end", "repeat", "repeat", "end"));
+        assertTrue(accepts("(repeat){2,3} -> end", "repeat", "repeat", "repeat", "end"));
+        assertFalse(accepts("(repeat){2,3} -> end", "repeat", "end"));
+        assertFalse(accepts("(repeat){2,3} -> end", "repeat", "repeat", "repeat", "repeat"));
+
+        assertTrue(accepts("(repeat){1,} -> end", "repeat", "end"));
+        assertTrue(accepts("(repeat){1,} -> end", "repeat", "repeat", "repeat", "repeat", "end"));
+        assertFalse(accepts("(repeat){1,} -> end", "end"));
+    }
+
+    @Test
+    public void testLargeRepetitionIsCountedNotExpanded() {
+        TransitionTable small = compile("open -> write{100} -> close");
+        TransitionTable large = compile("open -> write{1000000} -> close");
+        assertTrue(large.hasRegisters());
+        assertEquals(small.getStateCount(), large.getStateCount());
+
+        StateMachine sm = new StateMachine("open -> write{100} -> close");
+        sm.validateTransition("open");
+        for (int i = 0; i < 99; i++) {
+            sm.validateTransition("write");
+        }
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> sm.validateTransition("close"));
+        assertTrue(e.getMessage().startsWith("[ERROR] Invalid transition from "), e.getMessage());
+        sm.validateTransition("write");
+        assertThrows(IllegalStateException.class, () -> sm.validateTransition("write"));
+        sm.validateTransition("close");
+        assertTrue(sm.isInFinalState());
+    }
+
+    @Test
+    public void testLargeRepetitionRanges() {
+        String bounded = "open -> write{20,30} -> close";
+        String[] nineteen = new String[21];
+        String[] thirty = new String[32];
+        java.util.Arrays.fill(nineteen, "write");
+        java.util.Arrays.fill(thirty, "write");
+        nineteen[0] = thirty[0] = "open";
+        nineteen[20] = thirty[31] = "close";
+        assertFalse(accepts(bounded, nineteen));
+        assertTrue(accepts(bounded, thirty));
+        thirty[31] = "write";
+        assertFalse(accepts(bounded, thirty));
+
+        String unbounded = "open -> write{20,} -> close";
+        assertTrue(compile(unbounded).hasRegisters());
+        assertFalse(accepts(unbounded, nineteen));
+        String[] many = new String[502];
+        java.util.Arrays.fill(many, "write");
+        many[0] = "open";
+        many[501] = "close";
+        assertTrue(accepts(unbounded, many));
+    }
+
+    @Test
+    public void testConsecutiveCountersStartFromZero() {
+        String regex = "open -> write{20} -> flush{20,30} -> close";
+        String[] calls = new String[62];
+        java.util.Arrays.fill(calls, 1, 21, "write");
+        java.util.Arrays.fill(calls, 21, 61, "flush");
+        calls[0] = "open";
+        calls[61] = "close";
+        assertFalse(accepts(regex, calls));
+        calls[50] = "close";
+        assertTrue(accepts(regex, java.util.Arrays.copyOf(calls, 51)));
+        calls[45] = "close";
+        assertTrue(accepts(regex, java.util.Arrays.copyOf(calls, 46)));
+        calls[40] = "close";
+        assertFalse(accepts(regex, java.util.Arrays.copyOf(calls, 41)));
+    }
+
+    @Test
+    public void testAmbiguousCountIsExpanded() {
+        // Tras el comodín cada put puede empezar la cuenta, así que no basta con un contador
+        String regex = "(start .* put{10})";
+        assertFalse(compile(regex).hasRegisters());
+        String[] calls = new String[13];
+        java.util.Arrays.fill(calls, "put");
+        calls[0] = "start";
+        calls[1] = "other";
+        assertTrue(accepts(regex, calls));
+        assertTrue(new StateMachine(regex).getAutomaton().getTransitionTable().getStateCount() > 10);
+    }
+
+    @Test
+    public void testWildcardMatchesAnyMethodButFinal() {
+        assertTrue(accepts("(start .* end)", "start", "end"));
+        assertTrue(accepts("(start .* end)", "start", "end", "start", "unknown", "end", "FINAL"));
+        assertFalse(accepts("(start .* end)", "start", "FINAL"));
+
+        StateMachine sm = new StateMachine("(start .* end)");
+        sm.validateTransition("start");
+        sm.validateTransition("end");
+        assertTrue(sm.isInFinalState());
+        sm.validateTransition("other");
+        assertFalse(sm.isInFinalState());
+    }
+
+    @Test
+    public void testWildcardCallsDoNotChangeTheAutomaton() {
+        ExecutionOrderAutomaton automaton = ExecutionOrderAutomaton.forPattern("(start .* middle .* end)");
+        int stateCount = automaton.getStateCount();
+        java.util.Map<String, java.util.List<String>> transitions = automaton.getTransitions();
+
+        StateMachine first = new StateMachine(automaton);
+        StateMachine second = new StateMachine(automaton);
+        first.validateTransition("start");
+        for (int i = 0; i < 10_000; i++) {
+            first.validateTransition("call" + i);
+        }
+        first.validateTransition("middle");
+
+        assertEquals(stateCount, automaton.getStateCount());
+        assertSame(transitions, automaton.getTransitions());
+        assertEquals("INITIAL", second.getCurrentState().getId());
+        assertThrows(IllegalStateException.class, () -> second.validateTransition("middle"));
+    }
+
+    @Test
+    public void testFinalIsOptionalAndCloses() {
+        StateMachine sm = new StateMachine("start -> end -> FINAL");
+        sm.validateTransition("start");
+        sm.validateTransition("end");
+        assertTrue(sm.isInFinalState());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> sm.validateTransition("start"));
+        assertEquals("[ERROR] Cannot transition from declared final state: end", e.getMessage());
+
+        sm.validateTransition("FINAL");
+        assertEquals("FINAL", sm.getCurrentState().getId());
+        e = assertThrows(IllegalStateException.class, () -> sm.validateTransition("start"));
+        assertEquals("[ERROR] Cannot transition from final state: FINAL", e.getMessage());
+    }
+
+    @Test
+    public void testSpecialFinalTransitions() {
+        StateMachine sm = new StateMachine("start -> end [end:fun1,fun2]");
+        sm.validateTransition("start");
+        sm.validateTransition("end");
+        sm.validateTransition("fun2");
+        sm.validateTransition("fun1");
+        assertEquals("end", sm.getCurrentState().getId());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> sm.validateTransition("start"));
+        assertEquals("[ERROR] Invalid special transition: start", e.getMessage());
+        assertTrue(sm.isInFinalState());
+
+        assertTrue(accepts("start -> end [end:+]", "start", "end", "anything", "start", "FINAL"));
+    }
+
+    @Test
+    public void testSymbolsAreDense() {
+        TransitionTable table = ExecutionOrderAutomaton.forPattern("(start process end)").getTransitionTable();
+        SymbolTable symbols = table.getSymbols();
+
+        int start = symbols.lookup("start");
+        assertEquals(SymbolTable.UNKNOWN + 1, start);
+        assertEquals(SymbolTable.UNKNOWN, symbols.lookup("notInPattern"));
+        assertEquals("start", symbols.name(start));
+
+        int afterStart = table.next(TransitionTable.INITIAL_STATE, start);
+        assertNotEquals(TransitionTable.NO_TRANSITION, afterStart);
+        assertEquals(TransitionTable.NO_TRANSITION, table.next(afterStart, symbols.lookup("end")));
+    }
+
+    @Test
+    public void testIntSymbolValidation() {
+        StateMachine sm = new StateMachine("(start process end)", StateMachine.Engine.TABLE);
+        SymbolTable symbols = sm.getAutomaton().getTransitionTable().getSymbols();
+
+        assertTrue(sm.validateTransition(symbols.lookup("start")));
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> sm.validateTransition(symbols.lookup("end")));
+        assertEquals("[ERROR] Invalid transition from start to end.", e.getMessage());
+    }
+
+    @Test
+    public void testTryTransitionDoesNotThrow() {
+        for (StateMachine.Engine engine : StateMachine.Engine.values()) {
+            StateMachine sm = new StateMachine("(start process end)", engine);
+            SymbolTable symbols = sm.getAutomaton().getTransitionTable().getSymbols();
+
+            assertTrue(sm.tryTransition(symbols.lookup("start")));
+            assertFalse(sm.tryTransition(symbols.lookup("end")));
+            assertEquals("start", sm.getCurrentState().getId());
+            assertEquals("[ERROR] Invalid transition from start to end.",
+                    sm.rejection(symbols.lookup("end")).getMessage());
+            assertTrue(sm.tryTransition(symbols.lookup("process")));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ViolationAuditTest {
+
+    @AfterEach
+    public void restoreEnforcement() {
+        ViolationAudit.setMode(ViolationAudit.Mode.ENFORCE);
+        ViolationAudit.setStackSample(0);
+        ViolationAudit.reset();
+    }
+
+    @Test
+    public void testAuditModeCountsInsteadOfThrowing() throws Throwable {
+        ViolationAudit.setMode(ViolationAudit.Mode.AUDIT);
+        Object order = MethodOrderWeavingTest.weave(EcommerceOrder.class).getConstructor(String.class).newInstance("audit-1");
+
+        MethodOrderWeavingTest.call(order, "addToCart");
+        for (int i = 0; i < 3; i++) {
+            MethodOrderWeavingTest.call(order, "payment");
+        }
+        MethodOrderWeavingTest.call(order, "confirmation");
+        // La StateMachine no se ha movido con las llamadas rechazadas
+        MethodOrderWeavingTest.call(order, "checkout");
+        assertEquals("checkout", ExecutionOrderRegistry.getStateMachine(order).getCurrentState().getId());
+
+        List<ViolationAudit.Violation> violations = ViolationAudit.getViolations();
+        assertEquals(2, violations.size());
+        assertEquals(EcommerceOrder.class.getName() + ": addToCart -> payment", violations.get(0).toString());
+        assertEquals(3, violations.get(0).getCount());
+        assertEquals("confirmation", violations.get(1).getMethodName());
+        assertEquals(4, ViolationAudit.getTotalViolations());
+        assertNull(violations.get(0).getSampledStack());
+
+        // En modo ENFORCE se vuelve a lanzar la excepción
+        ViolationAudit.setMode(ViolationAudit.Mode.ENFORCE);
+        assertThrows(SecurityException.class, () -> MethodOrderWeavingTest.call(order, "addToCart"));
+        assertEquals(4, ViolationAudit.getTotalViolations());
+    }
+
+    @Test
+    public void testSampledStack() throws Throwable {
+        ViolationAudit.setMode(ViolationAudit.Mode.AUDIT);
+        ViolationAudit.setStackSample(1);
+        Object order = MethodOrderWeavingTest.weave(EcommerceOrder.class).getConstructor(String.class).newInstance("audit-2");
+
+        MethodOrderWeavingTest.call(order, "payment");
+
+        StackTraceElement[] stack = ViolationAudit.getViolations().get(0).getSampledStack();
+        assertNotNull(stack);
+        assertTrue(Arrays.stream(stack).anyMatch(frame -> frame.getMethodName().equals("testSampledStack")));
+    }
+
+    @Test
+    public void testAgentArguments() {
+        assertTrue(MethodOrderAgent.arguments(null).isEmpty());
+        MethodOrderAgent.configure(MethodOrderAgent.arguments("mode=audit, stackSample=10,"));
+        assertEquals(ViolationAudit.Mode.AUDIT, ViolationAudit.getMode());
+
+        assertThrows(IllegalArgumentException.class, () -> MethodOrderAgent.arguments("audit"));
+        assertThrows(IllegalArgumentException.class,
+                () -> MethodOrderAgent.configure(MethodOrderAgent.arguments("mode=silent")));
+        assertThrows(IllegalArgumentException.class,
+                () -> MethodOrderAgent.configure(MethodOrderAgent.arguments("stackSample=-1")));
+    }
+}
@@ -0,0 +1,85 @@
+package com.luis.tfg.ExecutionOrder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeakIdentityMapTest {
+
+    @Test
+    public void testKeysAreComparedByIdentity() {
+        WeakIdentityMap<Object, String> map = new WeakIdentityMap<>();
+        TestClass first = new TestClass("same-id");
+        TestClass second = new TestClass("same-id");
+        assertEquals(first, second);
+
+        assertNull(map.putIfAbsent(first, "first"));
+        assertNull(map.putIfAbsent(second, "second"));
+        assertEquals("first", map.putIfAbsent(first, "again"));
+
+        assertEquals("first", map.get(first));
+        assertEquals("second", map.get(second));
+        assertEquals(2, map.size());
+
+        assertEquals("first", map.remove(first));
+        assertNull(map.get(first));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testRegistryDoesNotShareStateMachinesBetweenEqualInstances() {
+        TestClass first = new TestClass("weak-registry");
+        TestClass second = new TestClass("weak-registry");
+        ExecutionOrderRegistry.register(first, "(start process end)");
+        ExecutionOrderRegistry.register(second, "(start process end)");
+
+        StateMachine firstMachine = ExecutionOrderRegistry.getStateMachine(first);
+        StateMachine secondMachine = ExecutionOrderRegistry.getStateMachine(second);
+        assertNotNull(firstMachine);
+        assertNotNull(secondMachine);
+        assertNotSame(firstMachine, secondMachine);
+
+        firstMachine.validateTransition("start");
+        assertThrows(IllegalStateException.class, () -> secondMachine.validateTransition("process"));
+    }
+
+    /**
+     * Crea millones de objetos de vida corta con su StateMachine y comprueba que ni el mapa
+     * ni la memoria ocupada tras un GC crecen con el número de objetos creados.
+     */
+    @Test
+    public void testHeapFootprintStaysFlat() throws InterruptedException {
+        WeakIdentityMap<Object, StateMachine> map = new WeakIdentityMap<>();
+        ExecutionOrderAutomaton automaton = ExecutionOrderAutomaton.forPattern("(addToCart checkout payment confirmation)");
+        int rounds = 8;
+        int perRound = 250_000;
+
+        long firstRound = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < perRound; i++) {
+                map.putIfAbsent(new EcommerceOrder("order-" + i), new StateMachine(automaton, StateMachine.Engine.TABLE));
+            }
+            long used = usedHeapAfterGc(map, perRound);
+            if (round == 0) {
+                firstRound = used;
+            }
+            assertTrue(map.size() < perRound / 10, "Expired entries were not expunged: " + map.size());
+            assertTrue(used < firstRound + 32L * 1024 * 1024,
+                    "Heap keeps growing: " + used + " bytes after round " + round + ", " + firstRound + " after the first");
+        }
+    }
+
+    /**
+     * Las referencias recogidas se encolan en segundo plano, así que se espera un poco a que
+     * la cola se vacíe antes de medir.
+     */
+    private static long usedHeapAfterGc(WeakIdentityMap<?, ?> map, int perRound) throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 50 && map.size() >= perRound / 10; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}